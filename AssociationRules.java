@@ -0,0 +1,338 @@
+/*
+ * AssociationRules
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Rules A => C from mined closed itemsets, for every split of an itemset
+ * Z into a non-empty antecedent A and consequent C, with
+ *
+ *   confidence = sup(Z) / sup(A)
+ *   lift       = confidence / (sup(C) / N)
+ *   conviction = (1 - sup(C) / N) / (1 - confidence)
+ *
+ * The support of any subset of a frequent itemset is the largest support
+ * of a closed itemset containing it, found in a hash trie of the closed
+ * itemsets keyed by their sorted items. Itemsets are split across worker
+ * threads. topByLift keeps only a k-rule heap per worker; forEachRule
+ * hands rules out in small batches so all of them can be written without
+ * ever being held at once.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+public class AssociationRules
+{
+    // rules a worker collects before handing them to the visitor
+    private static final int BATCH = 4096;
+
+    private final SupportTrie supports = new SupportTrie();
+    private final int transactions;
+    private final int maxItems;
+    private final int threads;
+
+
+    // Itemsets above maxItems items are skipped, each has 2^n - 2 splits; threads <= 0 uses every core
+    public AssociationRules(List<Itemset> closed, int transactions, int maxItems, int threads)
+    {
+        for (Itemset itemset : closed)
+            supports.add(itemset.items, itemset.support);
+        this.transactions = transactions;
+        this.maxItems = Math.min(maxItems, 30);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public static class Rule
+    {
+        public final int[] antecedent;
+        public final int[] consequent;
+        public final int support;
+        public final double confidence;
+        public final double lift;
+        public final double conviction;
+
+        Rule(int[] antecedent, int[] consequent, int support, double confidence, double lift, double conviction)
+        {
+            this.antecedent = antecedent;
+            this.consequent = consequent;
+            this.support = support;
+            this.confidence = confidence;
+            this.lift = lift;
+            this.conviction = conviction;
+        }
+
+        public String toString(IntFunction<String> names)
+        {
+            return String.format(Locale.ROOT, "{%s} => {%s}. Support: %d, confidence %.3f, lift %.3f, conviction %.3f",
+                    join(antecedent, names, ", "), join(consequent, names, ", "), support, confidence, lift, conviction);
+        }
+    }
+
+    public interface RuleVisitor
+    {
+        void rule(Rule rule) throws IOException;
+    }
+
+    // The k rules with the highest lift, highest first
+    public List<Rule> topByLift(List<Itemset> itemsets, double minConfidence, final int k) throws IOException
+    {
+        if (k <= 0)
+            return new ArrayList<Rule>();
+        final Comparator<Rule> byLift = Comparator.comparingDouble((Rule r) -> r.lift).thenComparingInt(r -> r.support);
+        final List<PriorityQueue<Rule>> heaps = Collections.synchronizedList(new ArrayList<PriorityQueue<Rule>>());
+
+        generate(itemsets, minConfidence, () ->
+        {
+            final PriorityQueue<Rule> heap = new PriorityQueue<Rule>(k + 1, byLift);
+            heaps.add(heap);
+            return new Worker()
+            {
+                boolean wants(double lift)
+                {
+                    return heap.size() < k || lift > heap.peek().lift;
+                }
+
+                void accept(Rule rule)
+                {
+                    heap.add(rule);
+                    if (heap.size() > k)
+                        heap.poll();
+                }
+            };
+        });
+
+        ArrayList<Rule> top = new ArrayList<Rule>();
+        for (PriorityQueue<Rule> heap : heaps)
+            top.addAll(heap);
+        top.sort(byLift.reversed());
+        return new ArrayList<Rule>(top.subList(0, Math.min(k, top.size())));
+    }
+
+    // Every rule, in no particular order; the visitor is called by one thread at a time
+    public long forEachRule(List<Itemset> itemsets, double minConfidence, final RuleVisitor visitor) throws IOException
+    {
+        final AtomicInteger count = new AtomicInteger();
+        generate(itemsets, minConfidence, () -> new Worker()
+        {
+            final ArrayList<Rule> batch = new ArrayList<Rule>();
+
+            void accept(Rule rule) throws IOException
+            {
+                batch.add(rule);
+                if (batch.size() == BATCH)
+                    flush();
+            }
+
+            void flush() throws IOException
+            {
+                synchronized (visitor)
+                {
+                    for (Rule rule : batch)
+                        visitor.rule(rule);
+                }
+                count.addAndGet(batch.size());
+                batch.clear();
+            }
+        });
+        return count.get();
+    }
+
+    // All rules as CSV, returns how many were written
+    public long writeCsv(List<Itemset> itemsets, double minConfidence, String file, final IntFunction<String> names)
+    throws IOException
+    {
+        final PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16));
+        try
+        {
+            writer.println("antecedent,consequent,support,confidence,lift,conviction");
+            return forEachRule(itemsets, minConfidence, rule -> writer.printf(Locale.ROOT, "%s,%s,%d,%.6f,%.6f,%.6f%n",
+                    quoted(join(rule.antecedent, names, ";")), quoted(join(rule.consequent, names, ";")),
+                    rule.support, rule.confidence, rule.lift, rule.conviction));
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    // Closure support of items[0..length), 0 when nothing frequent contains them
+    public int support(int[] items, int length)
+    {
+        return supports.support(items, length);
+    }
+
+
+    // What one thread does with the rules it finds
+    private abstract static class Worker
+    {
+        // lets a top-k worker skip building rules that cannot make it
+        boolean wants(double lift)
+        {
+            return true;
+        }
+
+        abstract void accept(Rule rule) throws IOException;
+
+        void flush() throws IOException
+        {
+        }
+    }
+
+    private void generate(final List<Itemset> itemsets, final double minConfidence, final Callable<Worker> workers)
+    throws IOException
+    {
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try
+        {
+            for (int t = 0; t < threads; t++)
+            {
+                futures.add(pool.submit(() ->
+                {
+                    Worker worker = workers.call();
+                    for (int i = next.getAndIncrement(); i < itemsets.size(); i = next.getAndIncrement())
+                        split(itemsets.get(i), minConfidence, worker);
+                    worker.flush();
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures)
+                future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Rule generation interrupted");
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    // Every antecedent/consequent split of one itemset, antecedents as bit masks over its items
+    private void split(Itemset itemset, double minConfidence, Worker worker) throws IOException
+    {
+        int n = itemset.size();
+        if (n < 2 || n > maxItems)
+            return;
+
+        int[] items = itemset.items;
+        int[] antecedent = new int[n];
+        int[] consequent = new int[n];
+        for (int mask = 1; mask < (1 << n) - 1; mask++)
+        {
+            int a = 0;
+            int c = 0;
+            for (int i = 0; i < n; i++)
+            {
+                if ((mask >>> i & 1) != 0)
+                    antecedent[a++] = items[i];
+                else
+                    consequent[c++] = items[i];
+            }
+
+            int antecedentSupport = supports.support(antecedent, a);
+            if (antecedentSupport == 0)
+                continue;
+            double confidence = (double) itemset.support / antecedentSupport;
+            if (confidence < minConfidence)
+                continue;
+
+            double consequentFrequency = (double) supports.support(consequent, c) / transactions;
+            double lift = confidence / consequentFrequency;
+            if (!worker.wants(lift))
+                continue;
+
+            double conviction = confidence >= 1.0d ? Double.POSITIVE_INFINITY : (1.0d - consequentFrequency) / (1.0d - confidence);
+            worker.accept(new Rule(Arrays.copyOf(antecedent, a), Arrays.copyOf(consequent, c),
+                    itemset.support, confidence, lift, conviction));
+        }
+    }
+
+    private static String join(int[] items, IntFunction<String> names, String separator)
+    {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < items.length; i++)
+        {
+            if (i > 0)
+                out.append(separator);
+            out.append(names.apply(items[i]));
+        }
+        return out.toString();
+    }
+
+    // One quoted CSV field, quotes inside it doubled
+    static String quoted(String field)
+    {
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+
+    // Hash trie over sorted item arrays, every node knows the largest support below it
+    static class SupportTrie
+    {
+        private final Node root = new Node();
+
+        private static class Node
+        {
+            final HashMap<Integer, Node> children = new HashMap<Integer, Node>(4);
+            int maxSupport;
+        }
+
+        void add(int[] items, int support)
+        {
+            Node node = root;
+            node.maxSupport = Math.max(node.maxSupport, support);
+            for (int item : items)
+            {
+                Node child = node.children.get(item);
+                if (child == null)
+                {
+                    child = new Node();
+                    node.children.put(item, child);
+                }
+                child.maxSupport = Math.max(child.maxSupport, support);
+                node = child;
+            }
+        }
+
+        // Largest support of a stored itemset containing items[0..length)
+        int support(int[] items, int length)
+        {
+            return superset(root, items, 0, length);
+        }
+
+        private static int superset(Node node, int[] items, int matched, int length)
+        {
+            if (matched == length)
+                return node.maxSupport;
+
+            // a direct hit on the next item first, it usually carries the answer
+            int best = 0;
+            Node exact = node.children.get(items[matched]);
+            if (exact != null)
+                best = superset(exact, items, matched + 1, length);
+
+            // or skip over smaller items that the stored itemset has and we do not
+            for (Map.Entry<Integer, Node> e : node.children.entrySet())
+            {
+                if (e.getKey() < items[matched] && e.getValue().maxSupport > best)
+                    best = Math.max(best, superset(e.getValue(), items, matched, length));
+            }
+            return best;
+        }
+    }
+}//end class
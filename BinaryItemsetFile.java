@@ -0,0 +1,412 @@
+/*
+ * BinaryItemsetFile
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Compact binary form of data.dat (transactions) and output.dat (closed
+ * itemsets). Layout, big endian:
+ *
+ *   int magic 'TXN1', int version, int flags (1 = records carry support)
+ *   int dictionary size, then per entry: int id, int byte length, UTF-8 name
+ *   int record count
+ *   long[record count + 1] offsets of each record from the start of the data
+ *   data: per record [varint support] varint item count, varint item deltas
+ *
+ * Items are written sorted and delta encoded as unsigned LEB128 varints.
+ * The reader maps the file read only and decodes records straight from
+ * the mapped pages, so walking a file never copies or parses text.
+ *
+ * Usage: java BinaryItemsetFile print file.bin
+ *        java BinaryItemsetFile spmf file.bin file.txt
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class BinaryItemsetFile implements AutoCloseable
+{
+    public static final int MAGIC = 0x54584E31;
+    public static final int VERSION = 1;
+    public static final int FLAG_SUPPORT = 1;
+
+    // Files are mapped in 1 GB segments that overlap by the largest record allowed
+    private static final long SEGMENT = 1L << 30;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+
+
+    // Called once per record with a reused buffer, items[0..length) are valid
+    public interface RecordVisitor
+    {
+        void visit(int record, int support, int[] items, int length);
+    }
+
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final HashMap<Integer, String> dictionary = new HashMap<Integer, String>();
+    private final boolean hasSupport;
+    private final int recordCount;
+    private final long indexStart;
+    private final long dataStart;
+    private int maxItems;
+
+
+    public static BinaryItemsetFile open(String file) throws IOException
+    {
+        return new BinaryItemsetFile(Paths.get(file));
+    }
+
+    private BinaryItemsetFile(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long fileSize = channel.size();
+
+        int count = (int) ((fileSize + SEGMENT - 1) / SEGMENT);
+        segments = new MappedByteBuffer[Math.max(count, 1)];
+        for (int i = 0; i < count; i++)
+        {
+            long position = i * SEGMENT;
+            long length = Math.min(SEGMENT + MAX_RECORD_BYTES, fileSize - position);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        if (count == 0)
+            throw new IOException(path + " is empty");
+
+        ByteBuffer header = segments[0];
+        if (header.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a binary itemset file");
+        if (header.getInt(4) != VERSION)
+            throw new IOException(path + " has unsupported version " + header.getInt(4));
+        hasSupport = (header.getInt(8) & FLAG_SUPPORT) != 0;
+
+        int position = 12;
+        int dictionarySize = header.getInt(position);
+        position += 4;
+        for (int i = 0; i < dictionarySize; i++)
+        {
+            int id = header.getInt(position);
+            int length = header.getInt(position + 4);
+            byte[] name = new byte[length];
+            ByteBuffer view = header.duplicate();
+            view.position(position + 8);
+            view.get(name);
+            dictionary.put(id, new String(name, StandardCharsets.UTF_8));
+            position += 8 + length;
+        }
+
+        recordCount = header.getInt(position);
+        indexStart = position + 4;
+        dataStart = indexStart + 8L * (recordCount + 1);
+    }
+
+    public int size()
+    {
+        return recordCount;
+    }
+
+    public boolean hasSupport()
+    {
+        return hasSupport;
+    }
+
+    public Map<Integer, String> getDictionary()
+    {
+        return dictionary;
+    }
+
+    public String name(int id)
+    {
+        String name = dictionary.get(id);
+        return name == null ? String.valueOf(id) : name;
+    }
+
+    // Decode every record in file order into one reused buffer
+    public void forEach(RecordVisitor visitor)
+    {
+        int[] items = new int[Math.max(maxItems, 16)];
+        long[] cursor = new long[1];
+
+        for (int r = 0; r < recordCount; r++)
+        {
+            cursor[0] = dataStart + offset(r);
+            int support = hasSupport ? readVarint(cursor) : 0;
+            int length = readVarint(cursor);
+            if (length > items.length)
+                items = new int[length];
+
+            int item = 0;
+            for (int i = 0; i < length; i++)
+            {
+                item += readVarint(cursor);
+                items[i] = item;
+            }
+            maxItems = Math.max(maxItems, length);
+
+            visitor.visit(r, support, items, length);
+        }
+    }
+
+    // Random access to one record, items are copied out
+    public int[] items(int record)
+    {
+        long[] cursor = {dataStart + offset(record)};
+        if (hasSupport)
+            readVarint(cursor);
+        int[] items = new int[readVarint(cursor)];
+        int item = 0;
+        for (int i = 0; i < items.length; i++)
+        {
+            item += readVarint(cursor);
+            items[i] = item;
+        }
+        return items;
+    }
+
+    public int support(int record)
+    {
+        if (!hasSupport)
+            throw new IllegalStateException("File holds transactions without supports");
+        long[] cursor = {dataStart + offset(record)};
+        return readVarint(cursor);
+    }
+
+    public List<int[]> readTransactions()
+    {
+        final List<int[]> transactions = new ArrayList<int[]>(recordCount);
+        forEach((record, support, items, length) -> transactions.add(Arrays.copyOf(items, length)));
+        return transactions;
+    }
+
+    public List<Itemset> readItemsets()
+    {
+        final List<Itemset> itemsets = new ArrayList<Itemset>(recordCount);
+        forEach((record, support, items, length) -> itemsets.add(new Itemset(Arrays.copyOf(items, length), support)));
+        return itemsets;
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private long offset(int record)
+    {
+        long position = indexStart + 8L * record;
+        return segment(position).getLong((int) (position % SEGMENT));
+    }
+
+    private ByteBuffer segment(long position)
+    {
+        return segments[(int) (position / SEGMENT)];
+    }
+
+    private int readVarint(long[] cursor)
+    {
+        long position = cursor[0];
+        ByteBuffer buffer = segment(position);
+        int index = (int) (position % SEGMENT);
+
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = buffer.get(index++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        cursor[0] = position + (index - (int) (position % SEGMENT));
+        return value;
+    }
+
+
+    public static void writeTransactions(String file, List<int[]> transactions, Map<Integer, String> dictionary)
+    throws IOException
+    {
+        List<int[]> sorted = new ArrayList<int[]>(transactions.size());
+        for (int[] transaction : transactions)
+        {
+            int[] items = transaction.clone();
+            Arrays.sort(items);
+            sorted.add(items);
+        }
+        write(file, sorted, null, dictionary);
+    }
+
+    public static void writeItemsets(String file, List<Itemset> itemsets, Map<Integer, String> dictionary)
+    throws IOException
+    {
+        List<int[]> records = new ArrayList<int[]>(itemsets.size());
+        int[] supports = new int[itemsets.size()];
+        int i = 0;
+        for (Itemset itemset : itemsets)
+        {
+            records.add(itemset.items);
+            supports[i++] = itemset.support;
+        }
+        write(file, records, supports, dictionary);
+    }
+
+    // Records must hold sorted items, supports is null for plain transactions
+    private static void write(String file, List<int[]> records, int[] supports, Map<Integer, String> dictionary)
+    throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(supports != null ? FLAG_SUPPORT : 0);
+
+            TreeMap<Integer, String> entries = new TreeMap<Integer, String>(dictionary);
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer, String> e : entries.entrySet())
+            {
+                byte[] name = e.getValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(e.getKey());
+                out.writeInt(name.length);
+                out.write(name);
+            }
+
+            // first pass sizes every record so the offset index can precede the data
+            out.writeInt(records.size());
+            long offset = 0;
+            int r = 0;
+            for (int[] items : records)
+            {
+                out.writeLong(offset);
+                int bytes = recordBytes(items, supports != null ? supports[r] : -1);
+                if (bytes > MAX_RECORD_BYTES)
+                    throw new IOException("Record " + r + " is larger than " + MAX_RECORD_BYTES + " bytes");
+                offset += bytes;
+                r++;
+            }
+            out.writeLong(offset);
+
+            r = 0;
+            for (int[] items : records)
+            {
+                if (supports != null)
+                    writeVarint(out, supports[r]);
+                writeVarint(out, items.length);
+                int previous = 0;
+                for (int item : items)
+                {
+                    writeVarint(out, item - previous);
+                    previous = item;
+                }
+                r++;
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static int recordBytes(int[] items, int support)
+    {
+        int bytes = support >= 0 ? varintBytes(support) : 0;
+        bytes += varintBytes(items.length);
+        int previous = 0;
+        for (int item : items)
+        {
+            bytes += varintBytes(item - previous);
+            previous = item;
+        }
+        return bytes;
+    }
+
+    private static int varintBytes(int value)
+    {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0)
+        {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Text exporter in the SPMF formats: "1 4 7" for transactions, "1 4 7 #SUP: 12" for itemsets
+    public void exportText(String file) throws IOException
+    {
+        final PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16));
+        final StringBuilder line = new StringBuilder();
+        try
+        {
+            forEach((record, support, items, length) ->
+            {
+                line.setLength(0);
+                for (int i = 0; i < length; i++)
+                {
+                    if (i > 0)
+                        line.append(' ');
+                    line.append(items[i]);
+                }
+                if (hasSupport)
+                    line.append(" #SUP: ").append(support);
+                writer.println(line);
+            });
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 2 && args[0].equals("print"))
+        {
+            try (BinaryItemsetFile file = open(args[1]))
+            {
+                final StringBuilder line = new StringBuilder();
+                file.forEach((record, support, items, length) ->
+                {
+                    line.setLength(0);
+                    for (int i = 0; i < length; i++)
+                    {
+                        if (i > 0)
+                            line.append(", ");
+                        line.append(file.name(items[i]));
+                    }
+                    if (file.hasSupport())
+                        line.append(". Support: ").append(support);
+                    System.out.println(line);
+                });
+            }
+        }
+        else if (args.length == 3 && args[0].equals("spmf"))
+        {
+            try (BinaryItemsetFile file = open(args[1]))
+            {
+                file.exportText(args[2]);
+            }
+        }
+        else
+        {
+            System.out.println("Usage: java BinaryItemsetFile print <file.bin>");
+            System.out.println("       java BinaryItemsetFile spmf <file.bin> <file.txt>");
+        }
+    }
+}//end class
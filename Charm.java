@@ -0,0 +1,175 @@
+/*
+ * Charm
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Vertical closed itemset mining (Zaki and Hsiao). Every itemset carries
+ * the bitmap of transactions containing it; pairs of siblings are joined
+ * by AND and popcount, and the four CHARM properties fold equal or nested
+ * tidsets into the closure instead of branching on them.
+ */
+
+import java.util.*;
+
+public class Charm implements ClosedItemsetMiner
+{
+    private int minSupport;
+    private HashMap<Integer, List<Itemset>> closedByTidHash;
+    private List<Itemset> results;
+
+
+    public String getName()
+    {
+        return "CHARM";
+    }
+
+    public List<Itemset> mine(List<int[]> transactions, int minSupport)
+    {
+        return mine(VerticalDatabase.fromTransactions(transactions), minSupport);
+    }
+
+    public List<Itemset> mine(VerticalDatabase db, int minSupport)
+    {
+        this.minSupport = minSupport;
+        this.closedByTidHash = new HashMap<Integer, List<Itemset>>();
+        this.results = new ArrayList<Itemset>();
+
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < db.items.length; i++)
+        {
+            int support = db.tidsets[i].cardinality();
+            if (support >= minSupport)
+                nodes.add(new Node(new int[]{db.items[i]}, db.tidsets[i], support));
+        }
+
+        charm(nodes);
+
+        results.sort(Itemset.CANONICAL);
+        return results;
+    }
+
+    private void charm(List<Node> nodes)
+    {
+        nodes.sort((a, b) -> a.support != b.support
+                ? Integer.compare(a.support, b.support)
+                : Integer.compare(a.items[0], b.items[0]));
+
+        int n = nodes.size();
+        boolean[] removed = new boolean[n];
+
+        for (int i = 0; i < n; i++)
+        {
+            if (removed[i])
+                continue;
+
+            Node xi = nodes.get(i);
+            int[] closure = xi.items;
+            List<Node> children = new ArrayList<Node>();
+
+            for (int j = i + 1; j < n; j++)
+            {
+                if (removed[j])
+                    continue;
+
+                Node xj = nodes.get(j);
+                int support = xi.tids.andCardinality(xj.tids);
+                if (support < minSupport)
+                    continue;
+
+                boolean coversI = support == xi.support;
+                boolean coversJ = support == xj.support;
+
+                if (coversI && coversJ)
+                {
+                    // property 1, t(Xi) = t(Xj)
+                    removed[j] = true;
+                    closure = union(closure, xj.items);
+                }
+                else if (coversI)
+                {
+                    // property 2, t(Xi) inside t(Xj)
+                    closure = union(closure, xj.items);
+                }
+                else if (coversJ)
+                {
+                    // property 3, t(Xj) inside t(Xi)
+                    removed[j] = true;
+                    children.add(new Node(xj.items, xi.tids.and(xj.tids), support));
+                }
+                else
+                {
+                    // property 4, the new node branches
+                    children.add(new Node(xj.items, xi.tids.and(xj.tids), support));
+                }
+            }
+
+            if (!children.isEmpty())
+            {
+                // children take the final closure of Xi as their prefix
+                for (Node child : children)
+                    child.items = union(closure, child.items);
+                charm(children);
+            }
+
+            addIfClosed(closure, xi.tids, xi.support);
+        }
+    }
+
+    private void addIfClosed(int[] items, TidBitmap tids, int support)
+    {
+        int hash = tids.hashCode();
+
+        List<Itemset> sameHash = closedByTidHash.get(hash);
+        if (sameHash == null)
+        {
+            sameHash = new ArrayList<Itemset>();
+            closedByTidHash.put(hash, sameHash);
+        }
+
+        for (Itemset closed : sameHash)
+        {
+            if (closed.support == support && Itemset.isSubset(items, closed.items))
+                return;
+        }
+
+        Itemset itemset = new Itemset(items, support);
+        sameHash.add(itemset);
+        results.add(itemset);
+    }
+
+    static int[] union(int[] a, int[] b)
+    {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (j == b.length || (i < a.length && a[i] < b[j]))
+                out[n++] = a[i++];
+            else if (i == a.length || b[j] < a[i])
+                out[n++] = b[j++];
+            else
+            {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+
+    static final class Node
+    {
+        int[] items;
+        final TidBitmap tids;
+        final int support;
+
+        Node(int[] items, TidBitmap tids, int support)
+        {
+            this.items = items;
+            this.tids = tids;
+            this.support = support;
+        }
+    }
+}//end class
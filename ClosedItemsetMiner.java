@@ -0,0 +1,91 @@
+/*
+ * ClosedItemsetMiner
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * In-process closed itemset mining over int encoded transactions, in
+ * place of running spmf.jar on data.dat. Every miner returns the same
+ * closed itemsets, sorted with Itemset.CANONICAL.
+ */
+
+import java.util.*;
+
+public interface ClosedItemsetMiner
+{
+    String getName();
+
+    // Transactions hold item ids in any order, minSupport is an absolute transaction count
+    List<Itemset> mine(List<int[]> transactions, int minSupport);
+
+    // Bytes allocated during the last mine by worker threads the miner started, which the caller's count misses
+    default long workerAllocatedBytes()
+    {
+        return 0;
+    }
+
+
+    // Build a miner from its configured name: fpclose, charm (or vertical), lcm or parallel
+    static ClosedItemsetMiner create(String name)
+    {
+        return create(name, 0);
+    }
+
+    // threads only applies to the parallel miner, <= 0 uses every core
+    static ClosedItemsetMiner create(String name, int threads)
+    {
+        switch (name.trim().toLowerCase())
+        {
+            case "parallel":
+            case "parallel-lcm":
+                return new ParallelLCM(threads);
+            case "fpclose":
+                return new FPClose();
+            case "charm":
+            case "vertical":
+                return new Charm();
+            case "lcm":
+                return new LCM();
+            default:
+                throw new IllegalArgumentException("Unknown itemset miner: " + name);
+        }
+    }
+
+    // Turn "10%" or "25" into an absolute support count, never less than 1
+    static int minSupportCount(String minSupport, int transactionCount)
+    {
+        String value = minSupport.trim();
+        int count;
+        if (value.endsWith("%"))
+        {
+            double percent = Double.parseDouble(value.substring(0, value.length() - 1).trim());
+            count = (int) Math.ceil(percent / 100.0d * transactionCount);
+        }
+        else
+        {
+            count = Integer.parseInt(value);
+        }
+        return Math.max(1, count);
+    }
+
+    // Sort and deduplicate the items of every transaction
+    static int[][] normalize(List<int[]> transactions)
+    {
+        int[][] normalized = new int[transactions.size()][];
+        int t = 0;
+        for (int[] transaction : transactions)
+        {
+            int[] items = transaction.clone();
+            Arrays.sort(items);
+            int n = 0;
+            for (int i = 0; i < items.length; i++)
+            {
+                if (n == 0 || items[i] != items[n - 1])
+                    items[n++] = items[i];
+            }
+            normalized[t++] = n == items.length ? items : Arrays.copyOf(items, n);
+        }
+        return normalized;
+    }
+}//end interface
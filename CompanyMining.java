@@ -9,16 +9,51 @@
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 public class CompanyMining
 {
-    static Connection conn;
+    static PriceDataSource source;
+    static Connection conn; //null unless the source is a database
+    static ConnectionPool pool;
    
-    private static HashMap<String, Integer> companyToInt;
-    private static HashMap<Integer, String> intToCompany;
+    static HashMap<String, Integer> companyToInt;
+    static HashMap<Integer, String> intToCompany;
     private static ArrayList<double []> sectorMatrix;
-    private static int movingAverageWindow = 10; //in days
+    static int movingAverageWindow = 10; //in days
+    static String movingAverageType = "sma"; //sma, ema or wma
+    private static String minerName = "fpclose"; //fpclose, charm, lcm, parallel or vertical
+    private static int miningThreads = 0; //parallel miner workers, 0 for every core
+    private static String minSupport = "10%"; //percent of transactions or absolute count
+    private static boolean exportSpmf = false; //also write data.dat and output.dat
+    private static boolean exportBinary = false; //also write data.bin and output.bin
+    private static String pipelineMode = "batch"; //batch or streaming
+    private static RunReport report;
+    private static SituationClassifier classifier = new SituationClassifier();
+    private static String outputMode = "full"; //full prints every itemset, summary only the strongest
+    private static int summaryItemsets = 20;
+    private static String runReportFile = ""; //json, or csv by extension, empty for none
+    private static boolean jfrEvents = false; //also emit a JFR event per phase
+    private static boolean incremental = false; //update saved closed itemsets with new days only
+    private static String incrementalState = "company-closed.state"; //saved closed itemsets
+    private static int incrementalWindow = 0; //days of transactions kept, 0 for all
+    private static String itemsetIndexFile = ""; //queryable index of the closed itemsets, empty for none
+    private static boolean rules = false; //also derive association rules from the closed itemsets
+    private static double minConfidence = 0.6;
+    private static int rulesTopK = 20; //rules printed, by lift
+    private static int ruleMaxItems = 12; //larger itemsets are not split into rules
+    private static String rulesFile = ""; //csv of every rule, empty for none
+    private static int lagDays = 0; //also pair each day with the situations of up to this many days before
+    private static LaggedTransactions lagged; //set while mining lagged transactions
+    private static List<SeriesRollup.Resolution> resolutions = Arrays.asList(SeriesRollup.Resolution.DAILY);
+    private static SeriesAligner.Policy alignPolicy = SeriesAligner.Policy.INTERSECTION;
+    private static int loadThreads = 1; //concurrent load queries
+    private static String loadExecutor = "fixed"; //fixed or virtual
+    private static String loadMode = "bulk"; //bulk or ticker
+    private static int fetchSize = 10000; //rows per cursor fetch in bulk mode
+    private static boolean useCache = false; //read prices from the local cache
+    private static String cacheDir = "cache";
     
     
     public static void main(String [] args) throws Exception
@@ -30,446 +65,869 @@ public class CompanyMining
 
         Properties readProps = new Properties();
         readProps.load(new FileInputStream(readParamsFile));
+        
+        MiningConfig config = new MiningConfig(readProps);
+        movingAverageWindow = config.getInt("movingAverageWindow", movingAverageWindow);
+        movingAverageType = config.getString("movingAverageType", movingAverageType);
+        minerName = config.getString("miner", minerName);
+        miningThreads = config.getInt("miningThreads", miningThreads);
+        minSupport = config.getString("minSupport", minSupport);
+        exportSpmf = config.getBoolean("exportSpmf", exportSpmf);
+        exportBinary = config.getBoolean("exportBinary", exportBinary);
+        pipelineMode = config.getString("pipelineMode", pipelineMode);
+        runReportFile = config.getString("runReport", runReportFile);
+        outputMode = config.getString("outputMode", outputMode);
+        summaryItemsets = config.getInt("summaryItemsets", summaryItemsets);
+        MiningLog.configure(MiningLog.Level.fromName(config.getString("logLevel", "info")),
+                config.getString("logFile", ""), config.getInt("logQueue", 8192));
+        jfrEvents = config.getBoolean("jfrEvents", jfrEvents);
+        incremental = config.getBoolean("incremental", incremental);
+        incrementalState = config.getString("incrementalState", incrementalState);
+        incrementalWindow = config.getInt("incrementalWindow", incrementalWindow);
+        classifier = new SituationClassifier(config.getDouble("increaseThreshold", SituationClassifier.DEFAULT_INCREASE_THRESHOLD),
+                config.getDouble("decreaseThreshold", SituationClassifier.DEFAULT_DECREASE_THRESHOLD),
+                config.getString("classifier", "auto"));
+        itemsetIndexFile = config.getString("itemsetIndex", itemsetIndexFile);
+        rules = config.getBoolean("rules", rules);
+        minConfidence = config.getDouble("minConfidence", minConfidence);
+        rulesTopK = config.getInt("rulesTopK", rulesTopK);
+        ruleMaxItems = config.getInt("ruleMaxItems", ruleMaxItems);
+        rulesFile = config.getString("rulesFile", rulesFile);
+        lagDays = config.getInt("lagDays", lagDays);
+        resolutions = SeriesRollup.Resolution.parseList(config.getString("resolutions", "daily"));
+        alignPolicy = SeriesAligner.Policy.fromName(config.getString("alignPolicy", "intersection"));
+        checkResolutions();
+        loadThreads = config.getInt("loadThreads", loadThreads);
+        loadExecutor = config.getString("loadExecutor", loadExecutor);
+        loadMode = config.getString("loadMode", loadMode);
+        fetchSize = config.getInt("fetchSize", fetchSize);
+        useCache = config.getBoolean("useCache", useCache);
+        cacheDir = config.getString("cacheDir", cacheDir);
+        
+        // Connector/J only streams with a fetch size when cursor fetch is enabled
+        if ((loadMode.equals("bulk") || useCache || pipelineMode.equals("streaming")) && readProps.getProperty("useCursorFetch") == null)
+            readProps.setProperty("useCursorFetch", "true");
 
         try{
-            Class.forName("com.mysql.jdbc.Driver");
-            String dburl = readProps.getProperty("dburl");
-            conn = DriverManager.getConnection(dburl, readProps);
-
-            System.out.printf("Database connection %s %s established.%n", dburl, readProps.getProperty("user"));
+            source = PriceDataSource.create(config);
+            if(source instanceof JdbcDataSource)
+            {
+                JdbcDataSource jdbc = (JdbcDataSource) source;
+                conn = jdbc.getConnection();
+                pool = new ConnectionPool(jdbc.getUrl(), jdbc.getConnectionProperties(), loadThreads);
+                println("Database connection " + jdbc.getUrl() + " " + readProps.getProperty("user") + " established.");
+            }
+            else
+            {
+                println("Reading " + source);
+            }
+            
+            report = new RunReport("company", jfrEvents);
             doCompanyAnalysis();
-            conn.close();
+            println(report.summary());
+            if(!runReportFile.isEmpty())
+                report.write(runReportFile);
+            if(pool != null)
+                pool.close();
+            source.close();
         }
         catch(SQLException e)
         {
-            System.out.printf("SQLException: %s%nVendorError: %s%n", e.getMessage(), e.getSQLState(),	e.getErrorCode());
+            MiningLog.error("SQLException: " + e.getMessage() + " VendorError: " + e.getSQLState());
+        }
+        finally
+        {
+            MiningLog.close();
         }
     }//end main
     
     // Print shortcuts
-    private static void println(String s){System.out.println(s);}
-    private static void print(String s){System.out.print(s);}
+    private static void println(String s){MiningLog.info(s);}
       
     // Driving function
     private static void doCompanyAnalysis() throws SQLException, Exception
     {
+        RunReport.Phase phase = report.begin("setup");
         ArrayList<String> companies = getCompanies();
         
-        HashMap<String, ArrayList<TransactionDay>> allTransactions = new HashMap<String, ArrayList<TransactionDay>>();
+        if(incremental)
+        {
+            phase.rows(companies.size()).end();
+            println("Updating closed itemsets incrementally");
+            doIncrementalAnalysis();
+            return;
+        }
+        
+        LinkedHashMap<String, TransactionSeries> allTransactions = new LinkedHashMap<String, TransactionSeries>();
         
         println("Getting start and end dates.");
         String[] dates = getStartEndDates();
         println("Start Date: " + dates[0] + "... End Date: " + dates[1]);
-            
+        phase.rows(companies.size()).end();
+        
+        if(pipelineMode.equals("streaming"))
+        {
+            println("Streaming companies through the pipeline");
+            doStreamingAnalysis(dates);
+            return;
+        }
+        
+        phase = report.begin("load");
         try
         {
-            for(String company: companies)
+            if(useCache && conn == null)
             {
-                println("Reading data for: " + company);
-                ArrayList<TransactionDay> companyData = getCompanyData(company, dates[0], dates[1]);
-                if(companyData != null)
-                    allTransactions.put(company, companyData);
+                println("The price cache is filled from a database, reading from " + source + " instead");
+            }
+            
+            if(useCache && conn != null)
+            {
+                println("Refreshing local price cache in " + cacheDir);
+                PriceVolumeCache cache = new PriceVolumeCache(cacheDir, fetchSize);
+                cache.refresh(conn, companies);
+                println("Fetched " + cache.getRowsFetched() + " new rows for " + cache.getTickersUpdated() + " companies");
+                
+                for(String company: companies)
+                {
+                    TransactionSeries companyData = getCachedCompanyData(cache, company, dates[0], dates[1]);
+                    if(companyData != null)
+                        allTransactions.put(company, companyData);
+                }
+            }
+            else if(loadMode.equals("bulk") || conn == null)
+            {
+                println("Reading data for all companies");
+                getAllCompanyData(allTransactions, dates[0], dates[1]);
+            }
+            else
+            {
+                if(loadThreads > 1)
+                {
+                    println("Reading data for " + companies.size() + " companies on " + loadThreads + " connections");
+                    ParallelLoader loader = new ParallelLoader(pool, loadThreads, loadExecutor);
+                    allTransactions.putAll(loader.load(companies,
+                            (c, company) -> getCompanyData(new JdbcDataSource(c, fetchSize, true), company, dates[0], dates[1])));
+                }
+                else
+                {
+                    for(String company: companies)
+                    {
+                        println("Reading data for: " + company);
+                        TransactionSeries companyData = getCompanyData(source, company, dates[0], dates[1]);
+                        if(companyData != null)
+                            allTransactions.put(company, companyData);
+                    }
+                }
             }
         }
         catch(SQLException e)
         {
-            System.out.printf("SQLException: %s%nVendorError: %s%n", e.getMessage(), e.getSQLState(), e.getErrorCode());
+            MiningLog.error("SQLException: " + e.getMessage() + " VendorError: " + e.getSQLState());
         }
         
         
-        //align data (discard any dates that dont exist for ALL companies)
+        phase.rows(rowCount(allTransactions.values())).count("series", allTransactions.size()).end();
+        
+        if(!resolutions.equals(Arrays.asList(SeriesRollup.Resolution.DAILY)))
+        {
+            doMultiResolutionAnalysis(allTransactions.values());
+            return;
+        }
+        
+        //align data (by default discard any dates that dont exist for ALL companies)
         println("Aligning data");
+        phase = report.begin("align");
         alignData(allTransactions.values());
+        phase.rows(rowCount(allTransactions.values())).end();
         
         //set situation values in transaction days
-        println("Categorizing transactions");
+        println("Categorizing transactions with the " + classifier.getKernelName() + " classifier");
+        phase = report.begin("classify");
         setupSituations(allTransactions.values());
+        phase.rows(rowCount(allTransactions.values())).end();
         
         //determine relationships
-        println("Creating Itemsets");
-        List<LinkedList<TransactionDay>> allItemsets = createItemSets(allTransactions.values());
-        
-        //mine for frequent closed itemsets
-        println("Activating external library to mine for closed itemsets");
-        outputItemsets(allItemsets);
-        Runtime.getRuntime().exec("java -jar spmf.jar run FPClose data.dat output.dat 10%");
-        
-        //print analysis of output
-        translateOutput("output.dat");
+        if(lagDays > 0)
+        {
+            println("Creating lagged itemsets over " + lagDays + " days");
+            mineLagged(allTransactions.values());
+        }
+        else if(minerName.equals("vertical"))
+        {
+            println("Creating tidset bitmaps");
+            phase = report.begin("itemsets");
+            VerticalDatabase vertical = VerticalDatabase.fromSeries(allTransactions.values());
+            phase.rows(vertical.transactionCount).end();
+            mineItemsets(null, vertical);
+        }
+        else
+        {
+            println("Creating Itemsets");
+            phase = report.begin("itemsets");
+            List<int[]> allItemsets = createItemSets(allTransactions.values());
+            phase.rows(allItemsets.size()).end();
+            mineItemsets(allItemsets, null);
+        }
     }
     
-    private static void translateOutput(String file)
-    throws FileNotFoundException
+    // Roll the loaded days up once, then align, classify and mine every resolution on its own thread
+    private static void doMultiResolutionAnalysis(Collection<TransactionSeries> daily)
+    throws Exception
     {
-        Scanner sc = new Scanner(new File(file));
-
-        while(sc.hasNextLine())
+        println("Rolling up " + resolutions);
+        RunReport.Phase phase = report.begin("rollup");
+        final Map<SeriesRollup.Resolution, List<TransactionSeries>> bySeries =
+                SeriesRollup.rollup(daily, resolutions, movingAverageType, movingAverageWindow);
+        phase.rows(rowCount(daily)).end();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(resolutions.size());
+        LinkedHashMap<SeriesRollup.Resolution, Future<ResolutionRun>> runs = new LinkedHashMap<SeriesRollup.Resolution, Future<ResolutionRun>>();
+        try
         {
-            String raw = sc.nextLine();
-            String[] rawSplit = raw.split(" #SUP: ");
-            String support = rawSplit[1];
-            String[] itemset = rawSplit[0].split(" ");
+            for(final SeriesRollup.Resolution resolution : resolutions)
+                runs.put(resolution, executor.submit(() -> mineResolution(resolution, bySeries.get(resolution))));
             
-            if(itemset.length > 1)
+            //print and write in the order asked for, whichever finishes first
+            for(Map.Entry<SeriesRollup.Resolution, Future<ResolutionRun>> e : runs.entrySet())
             {
-                print("Itemset: ");
-                
-                int len = itemset.length;
-                
-                print(intToCompany.get(Integer.valueOf(itemset[0])) + ", ");
-                
-                for (int i = 1; i < len; i++)
-                {
-                    print(intToCompany.get(Integer.valueOf(itemset[i])));
-                }
-                
-                println(". Support: " + support);
+                ResolutionRun result = e.getValue().get();
+                String name = e.getKey().toString().toLowerCase();
+                println("Closed itemsets at " + name + " resolution");
+                println(result.run.summary());
+                outputRun(result.run, result.transactions, name + ".");
             }
         }
+        finally
+        {
+            executor.shutdownNow();
+        }
     }
     
-    private static void outputItemsets(List<LinkedList<TransactionDay>> allItemsets)
-    throws FileNotFoundException, UnsupportedEncodingException
+    // The closed itemsets of one resolution and the transactions they came from, null for vertical mining
+    private static class ResolutionRun
     {
-        PrintWriter writer = new PrintWriter("data.dat", "UTF-8");
+        final MiningRun run;
+        final List<int[]> transactions;
         
-        for(List<TransactionDay> itemset : allItemsets)
+        ResolutionRun(MiningRun run, List<int[]> transactions)
         {
-            String line = "";
-            
-            for (TransactionDay item : itemset)
-            {
-                String name = item.name;
-                
-                Integer companyInt = companyToInt.get(name);
-                
-                line += (companyToInt.get(item.name) + " ");
-            }
-            
-            line = line.substring(0, line.length() - 1);
-            
-            writer.println(line);
+            this.run = run;
+            this.transactions = transactions;
         }
-        
-        writer.close();
     }
     
-    private static List<LinkedList<TransactionDay>> createItemSets(Collection<ArrayList<TransactionDay>> allTransactions)
+    // Align, classify and mine one resolution; only touches its own series
+    private static ResolutionRun mineResolution(SeriesRollup.Resolution resolution, List<TransactionSeries> series)
     {
-        ArrayList<Iterator<TransactionDay>> companyIterators = new ArrayList<Iterator<TransactionDay>>();
+        String name = resolution.toString().toLowerCase();
+        RunReport.Phase phase = report.begin(name + ".align");
+        alignData(series);
+        phase.rows(rowCount(series)).end();
+        
+        phase = report.begin(name + ".classify");
+        setupSituations(series);
+        phase.rows(rowCount(series)).end();
+        
+        phase = report.begin(name + ".mine");
+        MiningRun run;
+        List<int[]> allItemsets = null;
+        if(minerName.equals("vertical"))
+        {
+            VerticalDatabase vertical = VerticalDatabase.fromSeries(series);
+            run = MiningRun.run(vertical, ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount));
+        }
+        else
+        {
+            allItemsets = createItemSets(series);
+            run = MiningRun.run(ClosedItemsetMiner.create(minerName, miningThreads), allItemsets,
+                    ClosedItemsetMiner.minSupportCount(minSupport, allItemsets.size()));
+        }
+        phase.rows(run.transactions).count("itemsets", run.itemsets.size()).end();
+        return new ResolutionRun(run, allItemsets);
+    }
     
-        for (ArrayList<TransactionDay> company : allTransactions)
+    // Mine day d together with days d - 1 .. d - lagDays, items tagged with their lag
+    private static void mineLagged(Collection<TransactionSeries> allTransactions)
+    throws IOException
+    {
+        if(companyToInt.isEmpty())
         {
-            if(company.iterator().hasNext())
-                companyIterators.add(company.iterator());
+            MiningLog.warn("No companies to pair with earlier days.");
+            return;
         }
         
-        boolean daysLeft = true;
+        RunReport.Phase phase = report.begin("itemsets");
+        lagged = new LaggedTransactions(lagDays, Collections.max(companyToInt.values()));
+        TransactionSink.Collector collector = null;
+        VerticalDatabase.Builder builder = null;
+        TransactionSink sink;
+        if(minerName.equals("vertical"))
+            sink = builder = new VerticalDatabase.Builder();
+        else
+            sink = collector = new TransactionSink.Collector();
+        long transactions = lagged.build(allTransactions, sink);
+        phase.rows(transactions).end();
         
-        LinkedList<LinkedList<TransactionDay>> allItemsets = new LinkedList<LinkedList<TransactionDay>>();
+        phase = report.begin("mine");
+        MiningRun run;
+        if(builder != null)
+        {
+            VerticalDatabase vertical = builder.build();
+            run = MiningRun.run(vertical, ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount));
+        }
+        else
+        {
+            run = MiningRun.run(ClosedItemsetMiner.create(minerName, miningThreads), collector.transactions,
+                    ClosedItemsetMiner.minSupportCount(minSupport, collector.transactions.size()));
+        }
+        List<Itemset> anchored = lagged.anchored(run.itemsets);
+        phase.rows(run.transactions).count("itemsets", anchored.size()).end();
+        println(run.summary());
+        println(anchored.size() + " of them start on the transaction day, the rest are the same itemsets shifted");
         
-        while(daysLeft)
+        phase = report.begin("output");
+        if(!itemsetIndexFile.isEmpty())
         {
-            LinkedList<TransactionDay> increasing = new LinkedList<TransactionDay>();
-            LinkedList<TransactionDay> decreasing = new LinkedList<TransactionDay>();
-            
-            for(Iterator<TransactionDay> iter : companyIterators)
+            //lagged items are indexed under their described names, e.g. "AAPL up 2 days earlier"
+            HashMap<Integer, String> laggedNames = new HashMap<Integer, String>();
+            for(Itemset itemset : anchored)
             {
-                TransactionDay day = iter.next();
-                if(day.situation == TransactionDay.Situation.INCREASING)
-                {
-                    increasing.add(day);
-                }
-                else if (day.situation == TransactionDay.Situation.DECREASING)
-                {
-                    decreasing.add(day);
-                }
-                
-                if(!iter.hasNext())
-                    daysLeft = false;
+                for(int item : itemset.items)
+                    laggedNames.computeIfAbsent(item, i -> lagged.describe(i, intToCompany));
             }
-            
-            if(!increasing.isEmpty())
+            ItemsetIndex.write(itemsetIndexFile, anchored, laggedNames);
+        }
+        translateOutput(anchored);
+        phase.rows(anchored.size()).end();
+        if(rules)
+            outputRules(run.itemsets, anchored, run.transactions, "");
+        lagged = null;
+    }
+    
+    // Mine either the transactions or their vertical bitmaps, then report the closed itemsets
+    private static void mineItemsets(List<int[]> allItemsets, VerticalDatabase vertical)
+    throws IOException
+    {
+        //mine for frequent closed itemsets
+        RunReport.Phase phase = report.begin("mine");
+        MiningRun run;
+        if(vertical != null)
+        {
+            int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount);
+            println("Mining closed itemsets with vertical CHARM at min support " + minSupport);
+            run = MiningRun.run(vertical, minSupportCount);
+        }
+        else
+        {
+            ClosedItemsetMiner miner = ClosedItemsetMiner.create(minerName, miningThreads);
+            int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, allItemsets.size());
+            println("Mining closed itemsets with " + miner.getName() + " at min support " + minSupport);
+            run = MiningRun.run(miner, allItemsets, minSupportCount);
+        }
+        phase.rows(run.transactions).count("itemsets", run.itemsets.size()).end();
+        println(run.summary());
+        outputRun(run, allItemsets, "");
+    }
+    
+    // Exports, index, printed itemsets and rules of one run; prefix names its files and phases, e.g. "weekly."
+    private static void outputRun(MiningRun run, List<int[]> allItemsets, String prefix)
+    throws IOException
+    {
+        RunReport.Phase phase = report.begin(prefix + "output");
+        if(allItemsets != null)
+        {
+            //keep the SPMF text files for comparison with the external library
+            if(exportSpmf)
             {
-                allItemsets.add(increasing);
+                outputItemsets(prefixed(prefix, "data.dat"), allItemsets);
+                outputClosedItemsets(prefixed(prefix, "output.dat"), run.itemsets);
             }
             
-            if(!decreasing.isEmpty())
+            if(exportBinary)
+                BinaryItemsetFile.writeTransactions(prefixed(prefix, "data.bin"), allItemsets, intToCompany);
+        }
+        
+        if(exportBinary)
+            BinaryItemsetFile.writeItemsets(prefixed(prefix, "output.bin"), run.itemsets, intToCompany);
+        
+        if(!itemsetIndexFile.isEmpty())
+            ItemsetIndex.write(prefixed(prefix, itemsetIndexFile), run.itemsets, intToCompany);
+        
+        //print analysis of output
+        translateOutput(run.itemsets);
+        phase.rows(run.itemsets.size()).end();
+        if(rules)
+            outputRules(run.itemsets, run.itemsets, run.transactions, prefix);
+    }
+    
+    // "weekly." and "out/rules.csv" give "out/weekly.rules.csv"
+    private static String prefixed(String prefix, String file)
+    {
+        if(prefix.isEmpty())
+            return file;
+        File f = new File(file);
+        return new File(f.getParentFile(), prefix + f.getName()).getPath();
+    }
+    
+    // Incremental state, lagged items and the streaming pipeline are daily only, reject them with other resolutions
+    private static void checkResolutions()
+    {
+        if(resolutions.equals(Arrays.asList(SeriesRollup.Resolution.DAILY)))
+            return;
+        
+        ArrayList<String> daily = new ArrayList<String>();
+        if(incremental)
+            daily.add("incremental=true");
+        if(lagDays > 0)
+            daily.add("lagDays=" + lagDays);
+        if(pipelineMode.equals("streaming"))
+            daily.add("pipelineMode=streaming");
+        if(!daily.isEmpty())
+            throw new IllegalArgumentException("resolutions=" + resolutions.toString().toLowerCase().replaceAll("[\\[\\] ]", "")
+                    + " cannot be combined with " + String.join(", ", daily) + ", which only work on daily transactions");
+    }
+    
+    // Rules from the itemsets in "from", supports looked up among all closed itemsets
+    private static void outputRules(List<Itemset> closed, List<Itemset> from, int transactions, String prefix)
+    throws IOException
+    {
+        RunReport.Phase phase = report.begin(prefix + "rules");
+        AssociationRules associationRules = new AssociationRules(closed, transactions, ruleMaxItems, miningThreads);
+        if(!rulesFile.isEmpty())
+        {
+            String file = prefixed(prefix, rulesFile);
+            long written = associationRules.writeCsv(from, minConfidence, file, CompanyMining::itemName);
+            phase.count("rules", written);
+            println("Wrote " + written + " rules at confidence " + minConfidence + " to " + file);
+        }
+        
+        List<AssociationRules.Rule> top = associationRules.topByLift(from, minConfidence, rulesTopK);
+        println("Top " + top.size() + " rules by lift at confidence " + minConfidence + ":");
+        for(AssociationRules.Rule rule : top)
+            println("Rule: " + rule.toString(CompanyMining::itemName));
+        phase.rows(from.size()).end();
+    }
+    
+    // Walk all companies forward by date in lockstep, emitting transactions as each day completes
+    private static void doStreamingAnalysis(String[] dates)
+    throws SQLException, IOException
+    {
+        // the same companies the batch load keeps: at least one full moving average window in range
+        Map<String, Integer> days = source.countDays(dates[0], dates[1], false);
+        HashMap<String, Integer> entityIndex = new HashMap<String, Integer>();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for(int id = 0; id < intToCompany.size(); id++)
+        {
+            String company = intToCompany.get(id);
+            Integer count = days.get(company);
+            if(count != null && count >= movingAverageWindow)
             {
-                allItemsets.add(decreasing);
+                entityIndex.put(company, ids.size());
+                ids.add(id);
             }
         }
         
-        return allItemsets;
+        TransactionSink.Collector collector = null;
+        VerticalDatabase.Builder builder = null;
+        TransactionSink sink;
+        if(minerName.equals("vertical"))
+            sink = builder = new VerticalDatabase.Builder();
+        else
+            sink = collector = new TransactionSink.Collector();
+        
+        RunReport.Phase phase = report.begin("stream");
+        StreamingPipeline pipeline = new StreamingPipeline(ids.stream().mapToInt(Integer::intValue).toArray(),
+                movingAverageType, movingAverageWindow, alignPolicy, classifier, sink);
+        
+        source.forEachPriceByDate(dates[0], dates[1], (ticker, date, closePrice, volume) ->
+        {
+            Integer entity = entityIndex.get(ticker);
+            if(entity != null)
+                pipeline.add(entity, date, closePrice * volume);
+        });
+        pipeline.finish();
+        phase.rows(pipeline.getRows()).count("transactions", pipeline.getTransactions()).end();
+        
+        println("Streamed " + pipeline.getRows() + " rows over " + pipeline.getDaysSeen() + " days, "
+                + pipeline.getDaysEmitted() + " aligned days gave " + pipeline.getTransactions() + " transactions");
+        
+        mineItemsets(collector != null ? collector.transactions : null, builder != null ? builder.build() : null);
     }
     
-
-    private static void setupSituations(Collection<ArrayList<TransactionDay>> industries)
-    {                        
-        for(ArrayList<TransactionDay> list: industries){
-            for(TransactionDay t: list){
-                    if(t.capital > 1.25*t.movingAverage){
-                        t.situation = TransactionDay.Situation.INCREASING;
-                        println(t.toString() + t.situation);
-                    }
-                    if(t.capital < .75*t.movingAverage){
-                        t.situation = TransactionDay.Situation.DECREASING;
-                        println(t.toString() + t.situation);
-                    }
-                    else{
-                        t.situation = TransactionDay.Situation.STABLE;
-                        println(t.toString() + t.situation);
-                    }
-            }
-        }        
+    private static String itemName(int item)
+    {
+        return lagged != null ? lagged.describe(item, intToCompany) : intToCompany.get(item);
     }
     
-    private static void alignData(Collection<ArrayList<TransactionDay>> companies)
+    static void translateOutput(List<Itemset> itemsets)
     {
-        ArrayList<HashSet<String>> dateSetList = new ArrayList<HashSet<String>>();
-        
-        //set up the date set, to enable quick lookups of the existence of a date
-        for (ArrayList<TransactionDay> transactionList : companies)
+        //itemsets come sorted by support, summary mode prints only the strongest
+        int limit = Integer.MAX_VALUE;
+        if(outputMode.equals("summary"))
         {
-            HashSet<String> dateSet = new HashSet<String>();
-            for(TransactionDay day : transactionList)
+            int multi = 0;
+            for(Itemset itemset : itemsets)
             {
-                dateSet.add(day.date);
+                if(itemset.size() > 1)
+                    multi++;
             }
-            dateSetList.add(dateSet);
+            println(multi + " closed itemsets of two or more companies, the " + Math.min(multi, summaryItemsets) + " strongest:");
+            limit = summaryItemsets;
         }
         
-        //begin aligning the data
-        for (ArrayList<TransactionDay> company : companies)
+        StringBuilder line = new StringBuilder();
+        for(Itemset itemset : itemsets)
         {
-            Iterator<TransactionDay> iter = company.iterator();
-            while(iter.hasNext())
+            if(itemset.size() > 1 && limit-- > 0)
             {
-                TransactionDay day = iter.next();
+                line.setLength(0);
+                line.append("Itemset: ").append(itemName(itemset.items[0]));
                 
-                boolean existsInAll = true;
-                for(HashSet<String> dateSet : dateSetList)
+                for (int i = 1; i < itemset.size(); i++)
                 {
-                    if (!dateSet.contains(day.date))
-                    {
-                        existsInAll = false;
-                        break;
-                    }
+                    line.append(", ").append(itemName(itemset.items[i]));
                 }
                 
-                if(!existsInAll)
-                    iter.remove();
+                line.append(". Support: ").append(itemset.support);
+                println(line.toString());
             }
         }
     }
-
-   
-    private static ArrayList<String> getCompanies() throws SQLException
+    
+    // Closed itemsets in the SPMF output format
+    private static void outputClosedItemsets(String file, List<Itemset> itemsets)
+    throws FileNotFoundException, UnsupportedEncodingException
     {
-        //String array to return
-        ArrayList<String> companies = new ArrayList<String>();
-        // Format and execute the query
-        PreparedStatement pstmt = conn.prepareStatement("select Ticker from Company;");
-        ResultSet result = pstmt.executeQuery();
-        // Check for query result
-        if (result.next())
-        {
-            // Get first result info
-            String currIndustry = result.getString("Ticker");
-            companies.add(currIndustry);
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        
+        for(Itemset itemset : itemsets)
+        {
+            writer.println(itemset.toString());
+        }
+        
+        writer.close();
+    }
+    
+    static void outputItemsets(String file, List<int[]> allItemsets)
+    throws FileNotFoundException, UnsupportedEncodingException
+    {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        StringBuilder line = new StringBuilder();
+        
+        for(int[] itemset : allItemsets)
+        {
+            line.setLength(0);
             
-            companyToInt.put(currIndustry, 0);
-            intToCompany.put(0, currIndustry);
-
-            int i = 1;
-            // Iterate through remaining results
-            while (result.next())
+            for (int i = 0; i < itemset.length; i++)
             {
-                currIndustry = result.getString("Ticker");
-                
-                companyToInt.put(currIndustry, i);
-                intToCompany.put(i, currIndustry);
-                
-                companies.add(currIndustry);
-                i++;
+                if (i > 0)
+                    line.append(' ');
+                line.append(itemset[i]);
             }
+            
+            writer.println(line);
         }
-        else
+        
+        writer.close();
+    }
+    
+    // One transaction per day and direction, holding the ids of every company that moved that way
+    static List<int[]> createItemSets(Collection<TransactionSeries> allTransactions)
+    {
+        ArrayList<TransactionSeries> companies = new ArrayList<TransactionSeries>();
+        int days = Integer.MAX_VALUE;
+    
+        for (TransactionSeries company : allTransactions)
         {
-            System.out.printf("Error finding companies.%n");
+            if(company.size > 0)
+            {
+                companies.add(company);
+                days = Math.min(days, company.size);
+            }
         }
-            
-        pstmt.close();
-
-        return companies;
-    }//end getIndustries    
-    
+        
+        ArrayList<int[]> allItemsets = new ArrayList<int[]>();
+        if (companies.isEmpty())
+            return allItemsets;
+        
+        int[] increasing = new int[companies.size()];
+        int[] decreasing = new int[companies.size()];
+        
+        for (int day = 0; day < days; day++)
+            createDayItemSets(companies, day, increasing, decreasing, allItemsets);
+        
+        return allItemsets;
+    }
     
-    private static String[] getStartEndDates()
-    throws SQLException
+    // The increasing and decreasing transactions of one aligned day
+    private static void createDayItemSets(List<TransactionSeries> companies, int day, int[] increasing, int[] decreasing, List<int[]> allItemsets)
     {
-        // Placeholder until actual dates calculated, to return
-        String[] dates = new String[]{"start", "end"};
-        // Find start/end for each company first
-        ArrayList<String[]> allDates = new ArrayList<String[]>();
-        
-        PreparedStatement minDateStatement = conn.prepareStatement("select TransDate from PriceVolume order by TransDate asc limit 1;");
-        ResultSet result = minDateStatement.executeQuery();
+        int increasingCount = 0;
+        int decreasingCount = 0;
         
-        String currStart = "";
+        for(TransactionSeries company : companies)
+        {
+            byte situation = company.situation[day];
+            if(situation == TransactionSeries.INCREASING)
+            {
+                increasing[increasingCount++] = company.id;
+            }
+            else if (situation == TransactionSeries.DECREASING)
+            {
+                decreasing[decreasingCount++] = company.id;
+            }
+        }
         
-        // Check for query result
-        if (result.next())
+        if(increasingCount > 0)
         {
-            // Set the current start/end to first transaction
-            currStart = result.getString("TransDate");
-            
+            allItemsets.add(Arrays.copyOf(increasing, increasingCount));
         }
-        else
+        
+        if(decreasingCount > 0)
         {
-            System.out.printf("No data. No analysis.%n");
+            allItemsets.add(Arrays.copyOf(decreasing, decreasingCount));
         }
+    }
     
-    
-    
-        PreparedStatement maxDateStatement = conn.prepareStatement("select TransDate from PriceVolume order by TransDate desc limit 1;");
-        result = maxDateStatement.executeQuery();
-        
-        String currEnd = "";
-        
-        // Check for query result
-        if (result.next())
+    // Stream only the days after the saved state through the pipeline, resuming every moving average,
+    // and apply them to the saved closed itemsets
+    private static void doIncrementalAnalysis()
+    throws SQLException, IOException
+    {
+        RunReport.Phase phase = report.begin("incremental");
+        final IncrementalClosedItemsets state = IncrementalClosedItemsets.load(incrementalState, incrementalWindow,
+                companyToInt, movingAverageType, movingAverageWindow);
+        String start;
+        if(state.getLastDate() == Integer.MIN_VALUE)
         {
-            // Set the current start/end to first transaction
-            currEnd = result.getString("TransDate");
-            
+            println("No saved state in " + incrementalState + ", reading the whole history once");
+            start = getStartEndDates()[0];
         }
         else
         {
-            System.out.printf("No data. No analysis.%n");
+            println("Closed itemsets in " + incrementalState + " are up to " + TransactionSeries.toDateString(state.getLastDate()));
+            start = TransactionSeries.toDateString(state.getLastDate() + 1);
         }
+        String end = java.time.LocalDate.now().toString();
         
-        maxDateStatement.close();
-        
-        
-        // Add Start/End for this industry to allDates
-        allDates.add(new String[]{currStart, currEnd});
+        // every company takes part once its moving average is ready, as no run knows which ever will be
+        int[] ids = new int[intToCompany.size()];
+        String[] names = new String[ids.length];
+        for(int id = 0; id < ids.length; id++)
+        {
+            ids[id] = id;
+            names[id] = intToCompany.get(id);
+        }
+        StreamingPipeline pipeline = new StreamingPipeline(ids, movingAverageType, movingAverageWindow, alignPolicy, classifier, state);
+        pipeline.setDayListener(state);
+        pipeline.joinWhenReady();
+        state.resume(pipeline, names);
         
-        minDateStatement.close();
+        source.forEachPriceByDate(start, end, (ticker, date, closePrice, volume) ->
+        {
+            Integer entity = companyToInt.get(ticker);
+            if(entity != null)
+                pipeline.add(entity, date, closePrice * volume);
+        });
+        pipeline.finish();
+        state.remember(pipeline, names);
+        state.save(incrementalState, companyToInt);
+        phase.rows(pipeline.getRows()).count("closed", state.getClosedCount()).end();
+        println("Applied " + pipeline.getDaysEmitted() + " of " + pipeline.getDaysSeen() + " new days, "
+                + state.getTransactionCount() + " transactions and " + state.getClosedCount() + " closed itemsets held");
+        
+        final int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, state.getTransactionCount());
+        MiningRun run = MiningRun.run("incremental", state.getTransactionCount(), minSupportCount,
+                () -> state.closedItemsets(minSupportCount));
+        println(run.summary());
         
-        if (!allDates.isEmpty())
+        //print analysis of output
+        phase = report.begin("output");
+        translateOutput(run.itemsets);
+        phase.rows(run.itemsets.size()).end();
+    }
+    
+
+    // Days held over all series
+    private static long rowCount(Collection<TransactionSeries> allTransactions)
+    {
+        long rows = 0;
+        for (TransactionSeries series : allTransactions)
+            rows += series.size;
+        return rows;
+    }
+    
+    static void setupSituations(Collection<TransactionSeries> companies)
+    {                        
+        //rows are only printed at debug level
+        boolean debug = MiningLog.isEnabled(MiningLog.Level.DEBUG);
+        for(TransactionSeries series: companies)
         {
-            String[] currDates = allDates.get(0);
-            
-            for (String[] date : allDates)
+            classifier.classify(series);
+            if(debug)
             {
-            if ((date[0].compareTo(currDates[0])) > 0)
-            {
-                currDates[0] = date[0];
-            }
-            if ((date[1].compareTo(currDates[1])) < 0)
-            {
-                currDates[1] = date[1];
-            }
+                for(int i = 0; i < series.size; i++)
+                    MiningLog.debug(series.getDay(i).toString() + series.getSituation(i));
             }
-            
-            dates[0] = currDates[0];
-            dates[1] = currDates[1];
+        }        
+    }
+    
+    static void alignData(Collection<TransactionSeries> companies)
+    {
+        int days = SeriesAligner.align(companies, alignPolicy);
+        println("Aligned " + companies.size() + " series on " + days + " days");
+    }
+
+   
+    private static ArrayList<String> getCompanies() throws SQLException, IOException
+    {
+        //String array to return
+        ArrayList<String> companies = new ArrayList<String>(source.getTickers());
+        
+        for (int i = 0; i < companies.size(); i++)
+        {
+            companyToInt.put(companies.get(i), i);
+            intToCompany.put(i, companies.get(i));
+        }
+        
+        if (companies.isEmpty())
+        {
+            MiningLog.warn("Error finding companies.");
         }
 
-        return dates;
+        return companies;
+    }//end getIndustries    
+    
+    
+    private static String[] getStartEndDates()
+    throws SQLException, IOException
+    {
+        // Earliest and latest day of any company, from the shared date range index
+        DateRangeIndex index = source.getDateRanges();
+        
+        if (index.isEmpty())
+        {
+            MiningLog.warn("No data. No analysis.");
+        }
+        
+        return index.overallRange();
         
     }// end getStartEndDates\
 
     
-    private static ArrayList<TransactionDay> getCompanyData(String company, String startDate, String endDate)
-    throws SQLException
+    private static TransactionSeries getCompanyData(PriceDataSource source, String company, String startDate, String endDate)
+    throws SQLException, IOException
     {
         // To return
-        ArrayList<TransactionDay> results = new ArrayList<TransactionDay>();
+        final TransactionSeries results = new TransactionSeries(company, companyToInt.get(company));
         
-        ArrayList<Double> movingAvgList = new ArrayList<Double>();
+        final MovingAverage movingAvg = MovingAverage.create(movingAverageType, movingAverageWindow);
         
-        PreparedStatement pstmtCompanyData;
-
-        pstmtCompanyData = conn.prepareStatement(
-                " select P.TransDate, P.ClosePrice, P.Volume"
-                +" from PriceVolume P natural join Company "
-                +" where Ticker =  ? and TransDate between ? and ? order by TransDate DESC");
-        //[date, openPrice, closePrice, highPrice, lowPrice, volume]
-        pstmtCompanyData.setString(1, company);
-                    pstmtCompanyData.setString(2, startDate);
-                    pstmtCompanyData.setString(3, endDate);                                                            
-        ResultSet querySet = pstmtCompanyData.executeQuery();
-        
-        // Set up first day for do loop
-        if (querySet.next())
-        {
-        
-            TransactionDay day = new TransactionDay();
-            day.name = company;
-            day.date = querySet.getString("P.TransDate");
-
-            do
-            {                           
-                String date = querySet.getString("P.TransDate");
-                double closingPrice = querySet.getDouble("P.ClosePrice");
-                double volume = querySet.getDouble("P.Volume");
-
-                day.capital = closingPrice * volume;
-
-                movingAvgList.add(day.capital);
-                    
-                //if the moving average list is fully populated, set the moving average for that day
-                //if not set it to -1 because no moving average is possible for that day
-                if(movingAvgList.size() >= movingAverageWindow)
-                {
-                    movingAvgList = new ArrayList<Double>(movingAvgList.subList(movingAvgList.size() - movingAverageWindow, movingAvgList.size()));
-                    
-                    double average = 0.0d;
-                    
-                    for(Double val : movingAvgList)
-                    {
-                        average+= val;
-                    }
-                    
-                    average = average/movingAverageWindow;
-                    
-                    day.movingAverage = average;
-                }
-                else
-                {
-                    day.movingAverage = -1.0d;
-                }
-            
-            
-                results.add(day);
-                
-                day = new TransactionDay();
-                day.name = company;
-                day.date = date;
+        source.forEachPrice(company, startDate, endDate, (ticker, date, closingPrice, volume) ->
+        {
+            double capital = closingPrice * volume;
+            //no moving average is possible (-1) until a full window has been seen
+            results.add(date, capital, movingAvg.add(capital));
+        });
+        
+        if (results.size == 0)
+        {
+            println("Error finding transaction data for " + company);
+        }
+        
+        return finishCompanyData(results);
+    }//end getCompanyData    
+    
+    
+    // Read every ticker in one ordered pass, splitting rows into series as they arrive
+    private static void getAllCompanyData(final Map<String, TransactionSeries> allTransactions, String startDate, String endDate)
+    throws SQLException, IOException
+    {
+        final String[] company = new String[1];
+        final TransactionSeries[] results = new TransactionSeries[1];
+        final MovingAverage movingAvg = MovingAverage.create(movingAverageType, movingAverageWindow);
+        
+        source.forEachPrice(null, startDate, endDate, (ticker, date, closePrice, volume) ->
+        {
+            if (!ticker.equals(company[0]))
+            {
+                if (results[0] != null)
+                    putCompanyData(allTransactions, results[0]);
                 
-            } while(querySet.next());
+                company[0] = ticker;
+                Integer id = companyToInt.get(ticker);
+                // rows for tickers missing from Company are skipped like the natural join would
+                results[0] = id == null ? null : new TransactionSeries(ticker, id);
+                movingAvg.reset();
+            }
+            
+            if (results[0] == null)
+                return;
             
+            double capital = closePrice * volume;
+            results[0].add(date, capital, movingAvg.add(capital));
+        });
+        
+        if (results[0] != null)
+            putCompanyData(allTransactions, results[0]);
+        
+        for (String ticker : companyToInt.keySet())
+        {
+            if (!allTransactions.containsKey(ticker))
+                println("Error finding transaction data for " + ticker);
         }
-        else
+    }//end getAllCompanyData
+    
+    
+    // Build a series from the mapped columns of the local price cache
+    private static TransactionSeries getCachedCompanyData(PriceVolumeCache cache, String company, String startDate, String endDate)
+    throws IOException
+    {
+        PriceVolumeCache.Columns columns = cache.read(company);
+        if (columns == null)
         {
             println("Error finding transaction data for " + company);
+            return null;
         }
         
-        pstmtCompanyData.close();
+        int first = columns.lowerBound(TransactionSeries.toEpochDay(startDate));
+        int last = columns.lowerBound(TransactionSeries.toEpochDay(endDate) + 1);
         
-        //truncate results to remove days that dont have a moving average value
+        TransactionSeries results = new TransactionSeries(company, companyToInt.get(company), Math.max(last - first, 1));
+        MovingAverage movingAvg = MovingAverage.create(movingAverageType, movingAverageWindow);
         
+        for (int i = first; i < last; i++)
+        {
+            double capital = columns.close.get(i) * columns.volume.get(i);
+            results.add(columns.dates.get(i), capital, movingAvg.add(capital));
+        }
         
-        if(results.size() > movingAverageWindow)
-            results = new ArrayList<TransactionDay>(results.subList(movingAverageWindow - 1, results.size()));
+        return finishCompanyData(results);
+    }
+    
+    
+    private static void putCompanyData(Map<String, TransactionSeries> allTransactions, TransactionSeries results)
+    {
+        TransactionSeries companyData = finishCompanyData(results);
+        if (companyData != null)
+            allTransactions.put(companyData.name, companyData);
+    }
+    
+    
+    // Truncate results to remove days that dont have a moving average value
+    static TransactionSeries finishCompanyData(TransactionSeries results)
+    {
+        if(results.size >= movingAverageWindow)
+            results.dropFirst(movingAverageWindow - 1);
+        else
+            results.size = 0;
             
-        if(results.size() == 0)
+        if(results.size == 0)
             return null;
         
+        results.trimToSize();
         return results;
-    }//end getIndustryData    
+    }
     
     
 }//end class
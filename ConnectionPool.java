@@ -0,0 +1,89 @@
+/*
+ * ConnectionPool
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Fixed size pool of JDBC connections. Connections are opened lazily up
+ * to the pool size and callers block in take() until one is free.
+ */
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ConnectionPool implements AutoCloseable
+{
+    private final String dburl;
+    private final Properties props;
+    private final int size;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> opened = new ArrayList<Connection>();
+
+
+    public ConnectionPool(String dburl, Properties props, int size)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("Connection pool size must be at least 1, got " + size);
+        this.dburl = dburl;
+        this.props = props;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<Connection>(size);
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public Connection take() throws SQLException, InterruptedException
+    {
+        Connection conn = idle.poll();
+        if (conn != null)
+            return conn;
+
+        synchronized (opened)
+        {
+            if (opened.size() < size)
+            {
+                conn = DriverManager.getConnection(dburl, props);
+                opened.add(conn);
+                return conn;
+            }
+        }
+
+        return idle.take();
+    }
+
+    public void release(Connection conn)
+    {
+        if (conn != null)
+            idle.offer(conn);
+    }
+
+    public void close() throws SQLException
+    {
+        synchronized (opened)
+        {
+            SQLException first = null;
+            for (Connection conn : opened)
+            {
+                try
+                {
+                    conn.close();
+                }
+                catch (SQLException e)
+                {
+                    if (first == null)
+                        first = e;
+                }
+            }
+            opened.clear();
+            idle.clear();
+
+            if (first != null)
+                throw first;
+        }
+    }
+}//end class
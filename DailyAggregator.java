@@ -0,0 +1,56 @@
+/*
+ * DailyAggregator
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Sums a date ordered stream of values into one total per day in a single
+ * pass. A day is handed to the sink when the first row of the next day
+ * arrives (or on finish), and that row is counted towards its own day.
+ */
+
+public class DailyAggregator
+{
+    public interface DaySink
+    {
+        void day(int date, double total);
+    }
+
+
+    private final DaySink sink;
+    private int currentDate;
+    private double total;
+    private boolean open;
+
+
+    public DailyAggregator(DaySink sink)
+    {
+        this.sink = sink;
+    }
+
+    // Dates must not decrease
+    public void add(int date, double value)
+    {
+        if (open && date != currentDate)
+        {
+            if (date < currentDate)
+                throw new IllegalArgumentException("Rows out of date order: "
+                        + TransactionSeries.toDateString(date) + " after " + TransactionSeries.toDateString(currentDate));
+            sink.day(currentDate, total);
+            total = 0.0d;
+        }
+
+        currentDate = date;
+        total += value;
+        open = true;
+    }
+
+    public void finish()
+    {
+        if (open)
+            sink.day(currentDate, total);
+        open = false;
+        total = 0.0d;
+    }
+}//end class
@@ -0,0 +1,163 @@
+/*
+ * DataSourceTool
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Copies Company and PriceVolume out of the configured data source so the
+ * analysis can run somewhere else:
+ *
+ *   java DataSourceTool csv <dir> [key=value ...]
+ *       writes Company.csv and PriceVolume.csv for dataSource=csv
+ *   java DataSourceTool seed <jdbc url> [key=value ...]
+ *       creates the tables in an empty H2, SQLite or MySQL database and
+ *       loads them; the driver jar must be on the classpath
+ *
+ * The source is read from readerparams.txt, key=value arguments override
+ * it (e.g. dataSource=synthetic syntheticTickers=2000). Only the columns
+ * the analysis reads are copied.
+ */
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+public class DataSourceTool
+{
+    public static void main(String [] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: java DataSourceTool csv <dir> | seed <jdbc url> [key=value ...]");
+            return;
+        }
+
+        Properties props = new Properties();
+        File params = new File("readerparams.txt");
+        if (params.exists())
+            props.load(new FileInputStream(params));
+        for (int i = 2; i < args.length; i++)
+        {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Expected key=value, got " + args[i]);
+            props.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+
+        PriceDataSource source = PriceDataSource.create(new MiningConfig(props));
+        try
+        {
+            if (args[0].equals("csv"))
+                writeCsv(source, new File(args[1]));
+            else if (args[0].equals("seed"))
+                seed(source, args[1], props);
+            else
+                System.out.println("Unknown command " + args[0]);
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+
+    public static void writeCsv(PriceDataSource source, File dir) throws SQLException, IOException
+    {
+        dir.mkdirs();
+        Map<String, String> industries = source.getTickerIndustries();
+
+        PrintWriter companies = new PrintWriter(new BufferedWriter(new FileWriter(new File(dir, "Company.csv"))));
+        companies.println("Ticker,Industry");
+        for (Map.Entry<String, String> e : industries.entrySet())
+            companies.println(csvField(e.getKey()) + "," + csvField(e.getValue()));
+        companies.close();
+
+        final PrintWriter prices = new PrintWriter(new BufferedWriter(new FileWriter(new File(dir, "PriceVolume.csv")), 1 << 16));
+        prices.println("Ticker,TransDate,ClosePrice,Volume");
+        final long[] rows = new long[1];
+        String[] range = source.getDateRanges().overallRange();
+        if (!range[0].isEmpty())
+        {
+            source.forEachPrice(null, range[0], range[1], (ticker, date, closePrice, volume) ->
+            {
+                prices.println(csvField(ticker) + "," + TransactionSeries.toDateString(date) + "," + closePrice + "," + volume);
+                rows[0]++;
+            });
+        }
+        prices.close();
+
+        System.out.printf("Wrote %d companies and %d price rows to %s%n", industries.size(), rows[0], dir);
+    }
+
+    public static void seed(PriceDataSource source, String url, Properties props) throws SQLException, IOException
+    {
+        Connection target = DriverManager.getConnection(url, JdbcDataSource.connectionProperties(url, props));
+        try
+        {
+            Statement stmt = target.createStatement();
+            stmt.executeUpdate("create table Company (Ticker varchar(10) not null primary key, Industry varchar(100))");
+            stmt.executeUpdate("create table PriceVolume (Ticker varchar(10) not null, TransDate date not null,"
+                    + " ClosePrice double, Volume double, primary key (Ticker, TransDate))");
+            stmt.close();
+            target.setAutoCommit(false);
+
+            Map<String, String> industries = source.getTickerIndustries();
+            PreparedStatement company = target.prepareStatement("insert into Company (Ticker, Industry) values (?, ?)");
+            for (Map.Entry<String, String> e : industries.entrySet())
+            {
+                company.setString(1, e.getKey());
+                company.setString(2, e.getValue());
+                company.addBatch();
+            }
+            company.executeBatch();
+            company.close();
+
+            final PreparedStatement price = target.prepareStatement(
+                    "insert into PriceVolume (Ticker, TransDate, ClosePrice, Volume) values (?, ?, ?, ?)");
+            final long[] rows = new long[1];
+            String[] range = source.getDateRanges().overallRange();
+            if (!range[0].isEmpty())
+            {
+                source.forEachPrice(null, range[0], range[1], (ticker, date, closePrice, volume) ->
+                {
+                    try
+                    {
+                        price.setString(1, ticker);
+                        price.setDate(2, java.sql.Date.valueOf(TransactionSeries.toDateString(date)));
+                        price.setDouble(3, closePrice);
+                        price.setDouble(4, volume);
+                        price.addBatch();
+                        if (++rows[0] % 10000 == 0)
+                            price.executeBatch();
+                    }
+                    catch (SQLException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            price.executeBatch();
+            price.close();
+
+            Statement index = target.createStatement();
+            index.executeUpdate("create index PriceVolumeDate on PriceVolume (TransDate)");
+            index.close();
+            target.commit();
+
+            System.out.printf("Seeded %s with %d companies and %d price rows%n", url, industries.size(), rows[0]);
+        }
+        finally
+        {
+            target.close();
+        }
+    }
+
+    private static String csvField(String value)
+    {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}//end class
@@ -0,0 +1,112 @@
+/*
+ * DateRangeIndex
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * First and last TransDate of every ticker and industry, found with one
+ * grouped query instead of two sorted queries per industry. A data source
+ * builds its index once and shares it with everything that asks it; a
+ * new source, as every reload opens, queries it again.
+ */
+
+import java.sql.*;
+import java.util.*;
+
+public class DateRangeIndex
+{
+    private final HashMap<String, int[]> tickers = new HashMap<String, int[]>();
+    private final HashMap<String, int[]> industries = new HashMap<String, int[]>();
+    private int first = Integer.MAX_VALUE;
+    private int last = Integer.MIN_VALUE;
+
+
+    public static DateRangeIndex load(Connection conn) throws SQLException
+    {
+        DateRangeIndex index = new DateRangeIndex();
+
+        PreparedStatement pstmt = conn.prepareStatement(
+                " select Ticker, Industry, min(TransDate) as FirstDate, max(TransDate) as LastDate"
+                +" from Company natural join PriceVolume group by Ticker, Industry");
+        ResultSet result = pstmt.executeQuery();
+        long rows = 0;
+        for (; result.next(); rows++)
+        {
+            index.add(result.getString(1), result.getString(2),
+                    TransactionSeries.toEpochDay(result.getDate(3)),
+                    TransactionSeries.toEpochDay(result.getDate(4)));
+        }
+        pstmt.close();
+        RunReport.countQuery(rows, 0);
+
+        return index;
+    }
+
+    // Also used to build an index from data that does not come from the database
+    public void add(String ticker, String industry, int firstDate, int lastDate)
+    {
+        widen(tickers, ticker, firstDate, lastDate);
+        if (industry != null)
+            widen(industries, industry, firstDate, lastDate);
+        first = Math.min(first, firstDate);
+        last = Math.max(last, lastDate);
+    }
+
+    public boolean isEmpty()
+    {
+        return tickers.isEmpty();
+    }
+
+    // {first, last} epoch days, null if unknown
+    public int[] tickerRange(String ticker)
+    {
+        return tickers.get(ticker);
+    }
+
+    public int[] industryRange(String industry)
+    {
+        return industries.get(industry);
+    }
+
+    // Earliest and latest day of any ticker
+    public String[] overallRange()
+    {
+        if (isEmpty())
+            return new String[]{"", ""};
+        return new String[]{TransactionSeries.toDateString(first), TransactionSeries.toDateString(last)};
+    }
+
+    // Days covered by every one of the given industries: latest start to earliest end
+    public String[] commonIndustryRange(Collection<String> names)
+    {
+        int start = Integer.MIN_VALUE;
+        int end = Integer.MAX_VALUE;
+        for (String name : names)
+        {
+            int[] range = industries.get(name);
+            if (range == null)
+                continue;
+            start = Math.max(start, range[0]);
+            end = Math.min(end, range[1]);
+        }
+
+        if (start == Integer.MIN_VALUE)
+            return new String[]{"", ""};
+        return new String[]{TransactionSeries.toDateString(start), TransactionSeries.toDateString(end)};
+    }
+
+    private static void widen(HashMap<String, int[]> ranges, String key, int firstDate, int lastDate)
+    {
+        int[] range = ranges.get(key);
+        if (range == null)
+        {
+            ranges.put(key, new int[]{firstDate, lastDate});
+        }
+        else
+        {
+            range[0] = Math.min(range[0], firstDate);
+            range[1] = Math.max(range[1], lastDate);
+        }
+    }
+}//end class
@@ -0,0 +1,242 @@
+/*
+ * FPClose
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * FP-tree based closed itemset mining (Grahne and Zhu). Items are ranked
+ * by descending support and processed least frequent first, so by the
+ * time a candidate is reached every closed superset that holds a later
+ * item has already been found. A candidate subsumed by a known closed
+ * itemset of equal support is therefore not closed, and neither is
+ * anything in its conditional tree, which is skipped.
+ */
+
+import java.util.*;
+
+public class FPClose implements ClosedItemsetMiner
+{
+    private int minSupport;
+    private int[] rankToItem;
+    private HashMap<Integer, List<int[]>> closedBySupport;
+    private List<Itemset> results;
+
+
+    public String getName()
+    {
+        return "FPClose";
+    }
+
+    public List<Itemset> mine(List<int[]> transactions, int minSupport)
+    {
+        this.minSupport = minSupport;
+        this.closedBySupport = new HashMap<Integer, List<int[]>>();
+        this.results = new ArrayList<Itemset>();
+
+        int[][] db = ClosedItemsetMiner.normalize(transactions);
+
+        // rank frequent items by descending support, ties by item id
+        HashMap<Integer, Integer> supports = new HashMap<Integer, Integer>();
+        for (int[] transaction : db)
+        {
+            for (int item : transaction)
+                supports.merge(item, 1, Integer::sum);
+        }
+
+        List<int[]> frequent = new ArrayList<int[]>();
+        for (Map.Entry<Integer, Integer> e : supports.entrySet())
+        {
+            if (e.getValue() >= minSupport)
+                frequent.add(new int[]{e.getKey(), e.getValue()});
+        }
+        frequent.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+        rankToItem = new int[frequent.size()];
+        HashMap<Integer, Integer> itemToRank = new HashMap<Integer, Integer>();
+        for (int r = 0; r < frequent.size(); r++)
+        {
+            rankToItem[r] = frequent.get(r)[0];
+            itemToRank.put(rankToItem[r], r);
+        }
+
+        FPTree tree = new FPTree(rankToItem.length);
+        int[] path = new int[rankToItem.length];
+        for (int[] transaction : db)
+        {
+            int n = 0;
+            for (int item : transaction)
+            {
+                Integer rank = itemToRank.get(item);
+                if (rank != null)
+                    path[n++] = rank;
+            }
+            Arrays.sort(path, 0, n);
+            tree.insert(path, n, 1);
+        }
+
+        mineTree(tree, new int[0]);
+
+        results.sort(Itemset.CANONICAL);
+        return results;
+    }
+
+    private void mineTree(FPTree tree, int[] prefix)
+    {
+        int ranks = rankToItem.length;
+        int[] counts = new int[ranks];
+        int[] path = new int[ranks];
+
+        for (int r = ranks - 1; r >= 0; r--)
+        {
+            int support = tree.support[r];
+            if (support < minSupport)
+                continue;
+
+            // count items of the conditional pattern base of prefix + r
+            Arrays.fill(counts, 0);
+            for (Node node = tree.heads[r]; node != null; node = node.link)
+            {
+                for (Node p = node.parent; p.rank >= 0; p = p.parent)
+                    counts[p.rank] += node.count;
+            }
+
+            // items present in every transaction of the base belong to the closure
+            int[] candidate = Arrays.copyOf(prefix, prefix.length + 1 + r);
+            int length = prefix.length;
+            candidate[length++] = r;
+            for (int i = 0; i < r; i++)
+            {
+                if (counts[i] == support)
+                    candidate[length++] = i;
+            }
+            candidate = Arrays.copyOf(candidate, length);
+            Arrays.sort(candidate);
+
+            if (isSubsumed(candidate, support))
+                continue;
+
+            addClosed(candidate, support);
+
+            // conditional tree over the remaining frequent items
+            FPTree conditional = null;
+            for (Node node = tree.heads[r]; node != null; node = node.link)
+            {
+                int n = 0;
+                for (Node p = node.parent; p.rank >= 0; p = p.parent)
+                {
+                    if (counts[p.rank] >= minSupport && counts[p.rank] != support)
+                        path[n++] = p.rank;
+                }
+                if (n == 0)
+                    continue;
+
+                if (conditional == null)
+                    conditional = new FPTree(ranks);
+                reverse(path, n);
+                conditional.insert(path, n, node.count);
+            }
+
+            if (conditional != null)
+                mineTree(conditional, candidate);
+        }
+    }
+
+    private boolean isSubsumed(int[] candidate, int support)
+    {
+        List<int[]> closed = closedBySupport.get(support);
+        if (closed == null)
+            return false;
+
+        for (int[] itemset : closed)
+        {
+            if (Itemset.isSubset(candidate, itemset))
+                return true;
+        }
+        return false;
+    }
+
+    private void addClosed(int[] ranksOfItemset, int support)
+    {
+        closedBySupport.computeIfAbsent(support, s -> new ArrayList<int[]>()).add(ranksOfItemset);
+
+        int[] items = new int[ranksOfItemset.length];
+        for (int i = 0; i < items.length; i++)
+            items[i] = rankToItem[ranksOfItemset[i]];
+        Arrays.sort(items);
+        results.add(new Itemset(items, support));
+    }
+
+    private static void reverse(int[] a, int n)
+    {
+        for (int i = 0, j = n - 1; i < j; i++, j--)
+        {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+
+    // Prefix tree of ranked transactions with a node link list per rank
+    static final class FPTree
+    {
+        final Node root = new Node(-1, null);
+        final Node[] heads;
+        final int[] support;
+
+        FPTree(int ranks)
+        {
+            heads = new Node[ranks];
+            support = new int[ranks];
+        }
+
+        // path holds ascending ranks, most frequent first
+        void insert(int[] path, int n, int count)
+        {
+            Node node = root;
+            for (int i = 0; i < n; i++)
+            {
+                int rank = path[i];
+                Node child = node.child(rank);
+                if (child == null)
+                {
+                    child = new Node(rank, node);
+                    child.sibling = node.firstChild;
+                    node.firstChild = child;
+                    child.link = heads[rank];
+                    heads[rank] = child;
+                }
+                child.count += count;
+                support[rank] += count;
+                node = child;
+            }
+        }
+    }
+
+    static final class Node
+    {
+        final int rank;
+        final Node parent;
+        int count;
+        Node firstChild;
+        Node sibling;
+        Node link;
+
+        Node(int rank, Node parent)
+        {
+            this.rank = rank;
+            this.parent = parent;
+        }
+
+        Node child(int rank)
+        {
+            for (Node c = firstChild; c != null; c = c.sibling)
+            {
+                if (c.rank == rank)
+                    return c;
+            }
+            return null;
+        }
+    }
+}//end class
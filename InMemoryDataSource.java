@@ -0,0 +1,379 @@
+/*
+ * InMemoryDataSource
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * PriceDataSource holding Company and PriceVolume in memory, one set of
+ * date, close and volume columns per ticker sorted by date. Filled from
+ * CSV files (Company.csv and PriceVolume.csv with a header row, columns
+ * found by name) or from SyntheticPriceVolume, so the whole analysis can
+ * run with no database at all.
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class InMemoryDataSource implements PriceDataSource
+{
+    private final String description;
+    // Company table order
+    private final LinkedHashMap<String, String> industryOf = new LinkedHashMap<String, String>();
+    private final HashMap<String, Prices> prices = new HashMap<String, Prices>();
+    // tickers with rows, sorted like "order by Ticker"
+    private String[] sortedTickers = new String[0];
+
+
+    public InMemoryDataSource(String description)
+    {
+        this.description = description;
+    }
+
+    public void addCompany(String ticker, String industry)
+    {
+        industryOf.put(ticker, industry);
+    }
+
+    // Rows may come in any order, call finish() once all are added
+    public void addPrice(String ticker, int date, double closePrice, double volume)
+    {
+        Prices p = prices.get(ticker);
+        if (p == null)
+        {
+            p = new Prices();
+            prices.put(ticker, p);
+        }
+        p.add(date, closePrice, volume);
+    }
+
+    public InMemoryDataSource finish()
+    {
+        for (Prices p : prices.values())
+            p.sort();
+        sortedTickers = prices.keySet().toArray(new String[prices.size()]);
+        Arrays.sort(sortedTickers);
+        return this;
+    }
+
+    public static InMemoryDataSource synthetic(SyntheticPriceVolume data)
+    {
+        final InMemoryDataSource source = new InMemoryDataSource("synthetic " + data.tickers + " tickers x " + data.days + " days");
+        for (int i = 0; i < data.tickers; i++)
+            source.addCompany(data.getTicker(i), data.getIndustry(i));
+        data.forEachByTicker((ticker, date, closePrice, volume) -> source.addPrice(ticker, date, closePrice, volume));
+        return source.finish();
+    }
+
+    public static InMemoryDataSource readCsv(File dir) throws IOException
+    {
+        InMemoryDataSource source = new InMemoryDataSource("csv " + dir);
+
+        BufferedReader reader = new BufferedReader(new FileReader(new File(dir, "Company.csv")));
+        try
+        {
+            List<String> header = parseCsvLine(reader.readLine());
+            int ticker = column(header, "Ticker", "Company.csv");
+            int industry = column(header, "Industry", "Company.csv");
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                    continue;
+                List<String> fields = parseCsvLine(line);
+                source.addCompany(fields.get(ticker), fields.get(industry));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        reader = new BufferedReader(new FileReader(new File(dir, "PriceVolume.csv")), 1 << 16);
+        try
+        {
+            List<String> header = parseCsvLine(reader.readLine());
+            int ticker = column(header, "Ticker", "PriceVolume.csv");
+            int date = column(header, "TransDate", "PriceVolume.csv");
+            int close = column(header, "ClosePrice", "PriceVolume.csv");
+            int volume = column(header, "Volume", "PriceVolume.csv");
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.isEmpty())
+                    continue;
+                List<String> fields = parseCsvLine(line);
+                source.addPrice(fields.get(ticker), TransactionSeries.toEpochDay(fields.get(date)),
+                        Double.parseDouble(fields.get(close)), Double.parseDouble(fields.get(volume)));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return source.finish();
+    }
+
+    public List<String> getTickers()
+    {
+        return new ArrayList<String>(industryOf.keySet());
+    }
+
+    public List<String> getIndustries()
+    {
+        TreeSet<String> industries = new TreeSet<String>();
+        for (String ticker : sortedTickers)
+        {
+            String industry = industryOf.get(ticker);
+            if (industry != null)
+                industries.add(industry);
+        }
+        return new ArrayList<String>(industries);
+    }
+
+    public Map<String, String> getTickerIndustries()
+    {
+        return new LinkedHashMap<String, String>(industryOf);
+    }
+
+    public DateRangeIndex getDateRanges()
+    {
+        DateRangeIndex index = new DateRangeIndex();
+        for (String ticker : sortedTickers)
+        {
+            Prices p = prices.get(ticker);
+            if (industryOf.containsKey(ticker) && p.size > 0)
+                index.add(ticker, industryOf.get(ticker), p.dates[0], p.dates[p.size - 1]);
+        }
+        return index;
+    }
+
+    public void forEachPrice(String ticker, String startDate, String endDate, PriceVisitor visitor)
+    {
+        int start = TransactionSeries.toEpochDay(startDate);
+        int end = TransactionSeries.toEpochDay(endDate);
+        for (String t : ticker != null ? new String[]{ticker} : sortedTickers)
+        {
+            Prices p = prices.get(t);
+            if (p == null)
+                continue;
+            for (int i = p.lowerBound(start), last = p.lowerBound(end + 1); i < last; i++)
+                visitor.row(t, p.dates[i], p.close[i], p.volume[i]);
+        }
+    }
+
+    public void forEachPriceByDate(String startDate, String endDate, PriceVisitor visitor)
+    {
+        merge(Arrays.asList(sortedTickers), startDate, endDate, visitor);
+    }
+
+    public void forEachIndustryDay(String industry, String startDate, String endDate, DailyAggregator.DaySink sink)
+    {
+        final DailyAggregator days = new DailyAggregator(sink);
+        merge(tickersOf(industry), startDate, endDate, (ticker, date, closePrice, volume) -> days.add(date, closePrice * volume));
+        days.finish();
+    }
+
+    public Map<String, Integer> countDays(String startDate, String endDate, boolean byIndustry)
+    {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        if (!byIndustry)
+        {
+            int start = TransactionSeries.toEpochDay(startDate);
+            int end = TransactionSeries.toEpochDay(endDate);
+            for (String ticker : sortedTickers)
+            {
+                Prices p = prices.get(ticker);
+                counts.put(ticker, p.lowerBound(end + 1) - p.lowerBound(start));
+            }
+            return counts;
+        }
+
+        for (String industry : getIndustries())
+        {
+            final int[] days = new int[1];
+            forEachIndustryDay(industry, startDate, endDate, (date, total) -> days[0]++);
+            counts.put(industry, days[0]);
+        }
+        return counts;
+    }
+
+    public void close()
+    {
+    }
+
+    public String toString()
+    {
+        return description;
+    }
+
+    private List<String> tickersOf(String industry)
+    {
+        ArrayList<String> tickers = new ArrayList<String>();
+        for (String ticker : sortedTickers)
+        {
+            if (industry.equals(industryOf.get(ticker)))
+                tickers.add(ticker);
+        }
+        return tickers;
+    }
+
+    // k-way merge of the tickers' rows by date, ties in ticker order
+    private void merge(List<String> tickers, String startDate, String endDate, PriceVisitor visitor)
+    {
+        int start = TransactionSeries.toEpochDay(startDate);
+        int end = TransactionSeries.toEpochDay(endDate);
+
+        final Prices[] all = new Prices[tickers.size()];
+        final int[] cursor = new int[all.length];
+        int[] last = new int[all.length];
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, all.length), (a, b) ->
+        {
+            int da = all[a].dates[cursor[a]];
+            int db = all[b].dates[cursor[b]];
+            return da != db ? Integer.compare(da, db) : Integer.compare(a, b);
+        });
+        for (int i = 0; i < all.length; i++)
+        {
+            all[i] = prices.get(tickers.get(i));
+            if (all[i] == null)
+                continue;
+            cursor[i] = all[i].lowerBound(start);
+            last[i] = all[i].lowerBound(end + 1);
+            if (cursor[i] < last[i])
+                heap.add(i);
+        }
+
+        while (!heap.isEmpty())
+        {
+            int i = heap.poll();
+            Prices p = all[i];
+            visitor.row(tickers.get(i), p.dates[cursor[i]], p.close[cursor[i]], p.volume[cursor[i]]);
+            if (++cursor[i] < last[i])
+                heap.add(i);
+        }
+    }
+
+    private static int column(List<String> header, String name, String file) throws IOException
+    {
+        for (int i = 0; i < header.size(); i++)
+        {
+            if (header.get(i).trim().equalsIgnoreCase(name))
+                return i;
+        }
+        throw new IOException(file + " has no " + name + " column");
+    }
+
+    // Comma separated fields, double quotes around fields that hold commas or quotes
+    static List<String> parseCsvLine(String line) throws IOException
+    {
+        if (line == null)
+            throw new IOException("Missing CSV header");
+
+        ArrayList<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quoted)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    field.append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == ',')
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // One ticker's columns
+    private static class Prices
+    {
+        int size;
+        int[] dates = new int[64];
+        double[] close = new double[64];
+        double[] volume = new double[64];
+
+        void add(int date, double closePrice, double dayVolume)
+        {
+            if (size == dates.length)
+            {
+                dates = Arrays.copyOf(dates, size * 2);
+                close = Arrays.copyOf(close, size * 2);
+                volume = Arrays.copyOf(volume, size * 2);
+            }
+            dates[size] = date;
+            close[size] = closePrice;
+            volume[size] = dayVolume;
+            size++;
+        }
+
+        // Usually already in order; otherwise sort the rows by date
+        void sort()
+        {
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++)
+                sorted = dates[i - 1] <= dates[i];
+            if (sorted)
+                return;
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            final int[] byDate = dates;
+            Arrays.sort(order, (a, b) -> Integer.compare(byDate[a], byDate[b]));
+
+            int[] d = new int[size];
+            double[] c = new double[size];
+            double[] v = new double[size];
+            for (int i = 0; i < size; i++)
+            {
+                d[i] = dates[order[i]];
+                c[i] = close[order[i]];
+                v[i] = volume[order[i]];
+            }
+            dates = d;
+            close = c;
+            volume = v;
+        }
+
+        int lowerBound(int date)
+        {
+            int lo = 0, hi = size;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (dates[mid] < date)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+}//end class
@@ -0,0 +1,501 @@
+/*
+ * IncrementalClosedItemsets
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Closed itemsets kept up to date one transaction at a time and saved
+ * between runs, together with the moving average of every entity, so a
+ * daily run only loads, classifies and applies the days after the last
+ * one it saw.
+ *
+ * The table holds every closed itemset of the window down to support 1,
+ * which is what lets it be updated exactly without the transactions
+ * (the CloStream update). A new transaction t turns every C & t, for a
+ * closed C that shares an item with t, and t itself into closed itemsets:
+ * ones already in the table gain one, new ones start one above the best
+ * C that produced them. Expiring t takes one off every closed subset of
+ * t, and drops the ones that reach 0 or now tie a closed superset outside
+ * t. Closed itemsets are found through a per item index, so an update
+ * costs the closed itemsets that share items with t, whatever the length
+ * of the history. The table grows with the lattice of the window; bound
+ * it with windowDays.
+ *
+ * The saved file carries the id to name dictionary it was built with and
+ * is remapped to the current ids on load, because ids are positions in a
+ * query result and can change between runs. Moving averages are kept by
+ * entity name.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class IncrementalClosedItemsets implements TransactionSink, StreamingPipeline.DayListener
+{
+    private static final int MAGIC = 0x434c5333; // "CLS3"
+
+    // every closed itemset by its items
+    private final HashMap<Closed, Closed> closed = new HashMap<Closed, Closed>();
+    // the closed itemsets holding each item
+    private final HashMap<Integer, HashSet<Closed>> byItem = new HashMap<Integer, HashSet<Closed>>();
+    // days inside the window, oldest first; only kept when the window is bounded
+    private final ArrayDeque<Day> days = new ArrayDeque<Day>();
+    private final int windowDays;
+    private final String movingAverageType;
+    private final int movingAverageWindow;
+    // saved moving average and last situation of every entity, by name
+    private final HashMap<String, byte[]> averages = new HashMap<String, byte[]>();
+    private final HashMap<String, Byte> situations = new HashMap<String, Byte>();
+    // transactions of the day the pipeline is closing
+    private final ArrayList<int[]> today = new ArrayList<int[]>();
+    private int lastDate = Integer.MIN_VALUE;
+    private int transactionCount;
+
+
+    // windowDays <= 0 keeps every day
+    public IncrementalClosedItemsets(int windowDays, String movingAverageType, int movingAverageWindow)
+    {
+        this.windowDays = Math.max(0, windowDays);
+        this.movingAverageType = movingAverageType.trim().toLowerCase();
+        this.movingAverageWindow = movingAverageWindow;
+    }
+
+    // Last day seen, Integer.MIN_VALUE if none
+    public int getLastDate()
+    {
+        return lastDate;
+    }
+
+    // Transactions currently counted, the base for percentage supports
+    public int getTransactionCount()
+    {
+        return transactionCount;
+    }
+
+    // Closed itemsets held at any support, what the state costs in memory and on disk
+    public int getClosedCount()
+    {
+        return closed.size();
+    }
+
+    // Apply one kept day's transactions; days at or before the last day seen are ignored
+    public boolean addDay(int date, List<int[]> dayTransactions)
+    {
+        if (date <= lastDate)
+            return false;
+
+        // sorted without repeated items, as the miners see them
+        int[][] normalized = ClosedItemsetMiner.normalize(dayTransactions);
+        for (int[] transaction : normalized)
+            insert(transaction);
+        lastDate = date;
+
+        if (windowDays > 0)
+        {
+            days.addLast(new Day(date, normalized));
+            while (days.size() > windowDays)
+            {
+                for (int[] transaction : days.removeFirst().transactions)
+                    expire(transaction);
+            }
+        }
+        return true;
+    }
+
+    // Closed itemsets with at least minSupport transactions, sorted with Itemset.CANONICAL
+    public List<Itemset> closedItemsets(int minSupport)
+    {
+        ArrayList<Itemset> result = new ArrayList<Itemset>();
+        for (Closed c : closed.keySet())
+        {
+            if (c.support >= minSupport)
+                result.add(new Itemset(c.items.clone(), c.support));
+        }
+        result.sort(Itemset.CANONICAL);
+        return result;
+    }
+
+
+    // A pipeline's transactions arrive here, its days are applied as they close
+    public void accept(int[] items, int length)
+    {
+        today.add(Arrays.copyOf(items, length));
+    }
+
+    public void dayClosed(int date, boolean kept)
+    {
+        if (kept)
+            addDay(date, today);
+        else
+            lastDate = Math.max(lastDate, date);
+        today.clear();
+    }
+
+    // Continue the saved pass: entity i of the pipeline is names[i]
+    public void resume(StreamingPipeline pipeline, String[] names) throws IOException
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            byte[] saved = averages.get(names[i]);
+            if (saved != null)
+                pipeline.getAverage(i).read(new DataInputStream(new ByteArrayInputStream(saved)));
+            Byte situation = situations.get(names[i]);
+            if (situation != null)
+                pipeline.setLastSituation(i, situation);
+        }
+    }
+
+    // Keep the pipeline's averages for the next run, entities without a row yet are left out
+    public void remember(StreamingPipeline pipeline, String[] names) throws IOException
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            MovingAverage average = pipeline.getAverage(i);
+            if (average.getCount() == 0)
+                continue;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            average.write(new DataOutputStream(bytes));
+            averages.put(names[i], bytes.toByteArray());
+            situations.put(names[i], pipeline.getLastSituation(i));
+        }
+    }
+
+
+    // Every C & t and t itself are closed now, one above the best closed C they come from
+    private void insert(int[] t)
+    {
+        if (t.length == 0)
+            return;
+        transactionCount++;
+
+        HashMap<Closed, Integer> next = new HashMap<Closed, Integer>();
+        for (Map.Entry<Closed, Intersection> e : intersections(t).entrySet())
+        {
+            Closed key = new Closed(e.getValue().items());
+            Integer base = next.get(key);
+            if (base == null || e.getKey().support > base)
+                next.put(key, e.getKey().support);
+        }
+        Closed whole = new Closed(t);
+        if (!next.containsKey(whole))
+            next.put(whole, 0);
+
+        for (Map.Entry<Closed, Integer> e : next.entrySet())
+        {
+            Closed existing = closed.get(e.getKey());
+            if (existing != null)
+            {
+                existing.support++;
+            }
+            else
+            {
+                e.getKey().support = e.getValue() + 1;
+                add(e.getKey());
+            }
+        }
+    }
+
+    // Take t out: its closed subsets lose one and stay closed unless a closed superset outside t now ties them
+    private void expire(int[] t)
+    {
+        if (t.length == 0)
+            return;
+        transactionCount--;
+
+        HashMap<Closed, Intersection> hits = intersections(t);
+        ArrayList<Closed> subsets = new ArrayList<Closed>();
+        for (Map.Entry<Closed, Intersection> e : hits.entrySet())
+        {
+            if (e.getValue().size == e.getKey().items.length)
+            {
+                e.getKey().support--;
+                subsets.add(e.getKey());
+            }
+        }
+
+        ArrayList<Closed> dropped = new ArrayList<Closed>();
+        for (Closed c : subsets)
+        {
+            if (c.support == 0 || tiedBySuperset(c, hits))
+                dropped.add(c);
+        }
+        for (Closed c : dropped)
+            remove(c);
+    }
+
+    // A closed proper superset of c with c's support that is not inside the expired transaction
+    private boolean tiedBySuperset(Closed c, HashMap<Closed, Intersection> hits)
+    {
+        HashSet<Closed> rarest = null;
+        for (int item : c.items)
+        {
+            HashSet<Closed> holding = byItem.get(item);
+            if (rarest == null || holding.size() < rarest.size())
+                rarest = holding;
+        }
+        for (Closed d : rarest)
+        {
+            if (d.support != c.support || d.items.length <= c.items.length)
+                continue;
+            Intersection inT = hits.get(d);
+            if (inT != null && inT.size == d.items.length)
+                continue;
+            if (Itemset.isSubset(c.items, d.items))
+                return true;
+        }
+        return false;
+    }
+
+    // C & t of every closed C sharing an item with the sorted transaction t
+    private HashMap<Closed, Intersection> intersections(int[] t)
+    {
+        HashMap<Closed, Intersection> hits = new HashMap<Closed, Intersection>();
+        for (int item : t)
+        {
+            HashSet<Closed> holding = byItem.get(item);
+            if (holding == null)
+                continue;
+            for (Closed c : holding)
+            {
+                Intersection hit = hits.get(c);
+                if (hit == null)
+                {
+                    hit = new Intersection(Math.min(c.items.length, t.length));
+                    hits.put(c, hit);
+                }
+                hit.items[hit.size++] = item;
+            }
+        }
+        return hits;
+    }
+
+    private void add(Closed c)
+    {
+        closed.put(c, c);
+        for (int item : c.items)
+            byItem.computeIfAbsent(item, i -> new HashSet<Closed>()).add(c);
+    }
+
+    private void remove(Closed c)
+    {
+        closed.remove(c);
+        for (int item : c.items)
+        {
+            HashSet<Closed> holding = byItem.get(item);
+            holding.remove(c);
+            if (holding.isEmpty())
+                byItem.remove(item);
+        }
+    }
+
+
+    // Load saved state with its items remapped to the current ids, or start empty if the file does not exist yet
+    public static IncrementalClosedItemsets load(String file, int windowDays, Map<String, Integer> ids,
+                                                 String movingAverageType, int movingAverageWindow) throws IOException
+    {
+        IncrementalClosedItemsets state = new IncrementalClosedItemsets(windowDays, movingAverageType, movingAverageWindow);
+        if (!new File(file).exists())
+            return state;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file + " is not a closed itemset state file, delete it to rebuild");
+            int savedWindow = in.readInt();
+            if (savedWindow != state.windowDays)
+                throw new IOException(file + " was built with a window of " + savedWindow
+                        + " days, delete it to rebuild with " + state.windowDays);
+            String savedType = in.readUTF();
+            int savedAverageWindow = in.readInt();
+            if (!savedType.equals(state.movingAverageType) || savedAverageWindow != movingAverageWindow)
+                throw new IOException(file + " was built with a " + savedAverageWindow + " day " + savedType
+                        + " moving average, delete it to rebuild");
+            state.lastDate = in.readInt();
+            state.transactionCount = in.readInt();
+
+            // saved id to current id, by name
+            int[] remap = new int[in.readInt()];
+            for (int i = 0; i < remap.length; i++)
+            {
+                int savedId = in.readInt();
+                String name = in.readUTF();
+                Integer id = ids.get(name);
+                if (id == null)
+                    throw new IOException(file + " holds " + name + ", which is no longer loaded, delete it to rebuild");
+                if (savedId >= remap.length)
+                    throw new IOException(file + " has a corrupt dictionary");
+                remap[savedId] = id;
+            }
+
+            int closedCount = in.readInt();
+            for (int i = 0; i < closedCount; i++)
+            {
+                int support = in.readInt();
+                Closed c = new Closed(remap(readInts(in), remap, file));
+                c.support = support;
+                state.add(c);
+            }
+
+            int dayCount = in.readInt();
+            for (int i = 0; i < dayCount; i++)
+            {
+                int date = in.readInt();
+                int[][] dayTransactions = new int[in.readInt()][];
+                for (int t = 0; t < dayTransactions.length; t++)
+                    dayTransactions[t] = remap(readInts(in), remap, file);
+                state.days.addLast(new Day(date, dayTransactions));
+            }
+
+            int entities = in.readInt();
+            for (int i = 0; i < entities; i++)
+            {
+                String name = in.readUTF();
+                state.situations.put(name, in.readByte());
+                byte[] average = new byte[in.readInt()];
+                in.readFully(average);
+                state.averages.put(name, average);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return state;
+    }
+
+    // Written next to the file first so a failed run leaves the previous state intact
+    public void save(String file, Map<String, Integer> ids) throws IOException
+    {
+        File temp = new File(file + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(windowDays);
+            out.writeUTF(movingAverageType);
+            out.writeInt(movingAverageWindow);
+            out.writeInt(lastDate);
+            out.writeInt(transactionCount);
+
+            out.writeInt(ids.size());
+            for (Map.Entry<String, Integer> e : ids.entrySet())
+            {
+                out.writeInt(e.getValue());
+                out.writeUTF(e.getKey());
+            }
+
+            out.writeInt(closed.size());
+            for (Closed c : closed.keySet())
+            {
+                out.writeInt(c.support);
+                writeInts(out, c.items);
+            }
+
+            out.writeInt(days.size());
+            for (Day day : days)
+            {
+                out.writeInt(day.date);
+                out.writeInt(day.transactions.length);
+                for (int[] transaction : day.transactions)
+                    writeInts(out, transaction);
+            }
+
+            out.writeInt(averages.size());
+            for (Map.Entry<String, byte[]> e : averages.entrySet())
+            {
+                out.writeUTF(e.getKey());
+                out.writeByte(situations.get(e.getKey()));
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        Files.move(temp.toPath(), Paths.get(file), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int[] remap(int[] items, int[] remap, String file) throws IOException
+    {
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i] < 0 || items[i] >= remap.length)
+                throw new IOException(file + " holds an item outside its dictionary");
+            items[i] = remap[items[i]];
+        }
+        Arrays.sort(items);
+        return items;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException
+    {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readInt();
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException
+    {
+        out.writeInt(values.length);
+        for (int value : values)
+            out.writeInt(value);
+    }
+
+    // Sorted items and a mutable support; equality is on the items only
+    private static class Closed
+    {
+        final int[] items;
+        final int hash;
+        int support;
+
+        Closed(int[] items)
+        {
+            this.items = items;
+            this.hash = Arrays.hashCode(items);
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof Closed && Arrays.equals(items, ((Closed) o).items);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    // The items a closed itemset shares with a transaction, in order
+    private static class Intersection
+    {
+        final int[] items;
+        int size;
+
+        Intersection(int capacity)
+        {
+            items = new int[capacity];
+        }
+
+        int[] items()
+        {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    private static class Day
+    {
+        final int date;
+        final int[][] transactions;
+
+        Day(int date, int[][] transactions)
+        {
+            this.date = date;
+            this.transactions = transactions;
+        }
+    }
+}//end class
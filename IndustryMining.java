@@ -9,16 +9,49 @@
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
-public class StockMining
+public class IndustryMining
 {
-    static Connection conn;
+    static PriceDataSource source;
+    static Connection conn; //null unless the source is a database
+    static ConnectionPool pool;
    
     private static HashMap<String, Integer> industryToInt;
     private static HashMap<Integer, String> intToIndustry;
     private static ArrayList<double []> sectorMatrix;
     private static int movingAverageWindow = 10; //in days
+    private static String movingAverageType = "sma"; //sma, ema or wma
+    private static String industryAggregation = "sql"; //sum daily capital in sql or client
+    private static String minerName = "fpclose"; //fpclose, charm, lcm, parallel or vertical
+    private static int miningThreads = 0; //parallel miner workers, 0 for every core
+    private static String minSupport = "10%"; //percent of transactions or absolute count
+    private static boolean exportSpmf = false; //also write data.dat and output.dat
+    private static boolean exportBinary = false; //also write data.bin and output.bin
+    private static String pipelineMode = "batch"; //batch or streaming
+    private static RunReport report;
+    private static SituationClassifier classifier = new SituationClassifier();
+    private static String outputMode = "full"; //full prints every itemset, summary only the strongest
+    private static int summaryItemsets = 20;
+    private static String runReportFile = ""; //json, or csv by extension, empty for none
+    private static boolean jfrEvents = false; //also emit a JFR event per phase
+    private static boolean incremental = false; //update saved closed itemsets with new days only
+    private static String incrementalState = "industry-closed.state"; //saved closed itemsets
+    private static int incrementalWindow = 0; //days of transactions kept, 0 for all
+    private static String itemsetIndexFile = ""; //queryable index of the closed itemsets, empty for none
+    private static boolean rules = false; //also derive association rules from the closed itemsets
+    private static double minConfidence = 0.6;
+    private static int rulesTopK = 20; //rules printed, by lift
+    private static int ruleMaxItems = 12; //larger itemsets are not split into rules
+    private static String rulesFile = ""; //csv of every rule, empty for none
+    private static int lagDays = 0; //also pair each day with the situations of up to this many days before
+    private static LaggedTransactions lagged; //set while mining lagged transactions
+    private static List<SeriesRollup.Resolution> resolutions = Arrays.asList(SeriesRollup.Resolution.DAILY);
+    private static SeriesAligner.Policy alignPolicy = SeriesAligner.Policy.INTERSECTION;
+    private static int loadThreads = 1; //concurrent load queries
+    private static String loadExecutor = "fixed"; //fixed or virtual
+    private static int fetchSize = 10000; //rows per cursor fetch when streaming
     
     
     public static void main(String [] args) throws Exception
@@ -30,450 +63,785 @@ public class StockMining
 
         Properties readProps = new Properties();
         readProps.load(new FileInputStream(readParamsFile));
+        
+        MiningConfig config = new MiningConfig(readProps);
+        movingAverageWindow = config.getInt("movingAverageWindow", movingAverageWindow);
+        movingAverageType = config.getString("movingAverageType", movingAverageType);
+        industryAggregation = config.getString("industryAggregation", industryAggregation);
+        minerName = config.getString("miner", minerName);
+        miningThreads = config.getInt("miningThreads", miningThreads);
+        minSupport = config.getString("minSupport", minSupport);
+        exportSpmf = config.getBoolean("exportSpmf", exportSpmf);
+        exportBinary = config.getBoolean("exportBinary", exportBinary);
+        pipelineMode = config.getString("pipelineMode", pipelineMode);
+        runReportFile = config.getString("runReport", runReportFile);
+        outputMode = config.getString("outputMode", outputMode);
+        summaryItemsets = config.getInt("summaryItemsets", summaryItemsets);
+        MiningLog.configure(MiningLog.Level.fromName(config.getString("logLevel", "info")),
+                config.getString("logFile", ""), config.getInt("logQueue", 8192));
+        jfrEvents = config.getBoolean("jfrEvents", jfrEvents);
+        incremental = config.getBoolean("incremental", incremental);
+        incrementalState = config.getString("incrementalState", incrementalState);
+        incrementalWindow = config.getInt("incrementalWindow", incrementalWindow);
+        classifier = new SituationClassifier(config.getDouble("increaseThreshold", SituationClassifier.DEFAULT_INCREASE_THRESHOLD),
+                config.getDouble("decreaseThreshold", SituationClassifier.DEFAULT_DECREASE_THRESHOLD),
+                config.getString("classifier", "auto"));
+        itemsetIndexFile = config.getString("itemsetIndex", itemsetIndexFile);
+        rules = config.getBoolean("rules", rules);
+        minConfidence = config.getDouble("minConfidence", minConfidence);
+        rulesTopK = config.getInt("rulesTopK", rulesTopK);
+        ruleMaxItems = config.getInt("ruleMaxItems", ruleMaxItems);
+        rulesFile = config.getString("rulesFile", rulesFile);
+        lagDays = config.getInt("lagDays", lagDays);
+        resolutions = SeriesRollup.Resolution.parseList(config.getString("resolutions", "daily"));
+        alignPolicy = SeriesAligner.Policy.fromName(config.getString("alignPolicy", "intersection"));
+        checkResolutions();
+        loadThreads = config.getInt("loadThreads", loadThreads);
+        loadExecutor = config.getString("loadExecutor", loadExecutor);
+        fetchSize = config.getInt("fetchSize", fetchSize);
+        
+        // Connector/J only streams with a fetch size when cursor fetch is enabled
+        if (pipelineMode.equals("streaming") && readProps.getProperty("useCursorFetch") == null)
+            readProps.setProperty("useCursorFetch", "true");
 
         try{
-            Class.forName("com.mysql.jdbc.Driver");
-            String dburl = readProps.getProperty("dburl");
-            conn = DriverManager.getConnection(dburl, readProps);
-
-            System.out.printf("Database connection %s %s established.%n", dburl, readProps.getProperty("user"));
-            doIndustrynAnalysis();
-            conn.close();
+            source = PriceDataSource.create(config);
+            if(source instanceof JdbcDataSource)
+            {
+                JdbcDataSource jdbc = (JdbcDataSource) source;
+                conn = jdbc.getConnection();
+                pool = new ConnectionPool(jdbc.getUrl(), jdbc.getConnectionProperties(), loadThreads);
+                println("Database connection " + jdbc.getUrl() + " " + readProps.getProperty("user") + " established.");
+            }
+            else
+            {
+                println("Reading " + source);
+            }
+            
+            report = new RunReport("industry", jfrEvents);
+            doIndustryAnalysis();
+            println(report.summary());
+            if(!runReportFile.isEmpty())
+                report.write(runReportFile);
+            if(pool != null)
+                pool.close();
+            source.close();
         }
         catch(SQLException e)
         {
-            System.out.printf("SQLException: %s%nVendorError: %s%n", e.getMessage(), e.getSQLState(),	e.getErrorCode());
+            MiningLog.error("SQLException: " + e.getMessage() + " VendorError: " + e.getSQLState());
+        }
+        finally
+        {
+            MiningLog.close();
         }
     }//end main
     
     // Print shortcuts
-    private static void println(String s){System.out.println(s);}
-    private static void print(String s){System.out.print(s);}
+    private static void println(String s){MiningLog.info(s);}
       
     // Driving function
     private static void doIndustryAnalysis() throws SQLException, Exception
     {
+        RunReport.Phase phase = report.begin("setup");
         ArrayList<String> industries = getIndustries();
         
-        HashMap<String, ArrayList<TransactionDay>> allTransactions = new HashMap<String, ArrayList<TransactionDay>>();
+        if(incremental)
+        {
+            phase.rows(industries.size()).end();
+            println("Updating closed itemsets incrementally");
+            doIncrementalAnalysis(industries);
+            return;
+        }
+        
+        LinkedHashMap<String, TransactionSeries> allTransactions = new LinkedHashMap<String, TransactionSeries>();
         
         println("Getting start and end dates.");
         String[] dates = getStartEndDates(industries);
         println("Start Date: " + dates[0] + "... End Date: " + dates[1]);
-            
+        phase.rows(industries.size()).end();
+        
+        if(pipelineMode.equals("streaming"))
+        {
+            println("Streaming industries through the pipeline");
+            doStreamingAnalysis(dates);
+            return;
+        }
+        
+        phase = report.begin("load");
         try
         {
-            for(String industry: industries)
+            if(loadThreads > 1 && pool != null)
             {
-                println("Reading data for: " + industry);
-                allTransactions.put(industry, getIndustryData(industry, dates[0], dates[1]));
+                println("Reading data for " + industries.size() + " industries on " + loadThreads + " connections");
+                ParallelLoader loader = new ParallelLoader(pool, loadThreads, loadExecutor);
+                allTransactions.putAll(loader.load(industries, (c, industry) -> getIndustryData(
+                        new JdbcDataSource(c, fetchSize, industryAggregation.equals("sql")), industry, dates[0], dates[1])));
+            }
+            else
+            {
+                for(String industry: industries)
+                {
+                    println("Reading data for: " + industry);
+                    TransactionSeries industryData = getIndustryData(source, industry, dates[0], dates[1]);
+                    if(industryData != null)
+                        allTransactions.put(industry, industryData);
+                }
             }
         }
         catch(SQLException e)
         {
-            System.out.printf("SQLException: %s%nVendorError: %s%n", e.getMessage(), e.getSQLState(), e.getErrorCode());
+            MiningLog.error("SQLException: " + e.getMessage() + " VendorError: " + e.getSQLState());
         }
         
         
-        //align data (discard any dates that dont exist for ALL industries)
+        phase.rows(rowCount(allTransactions.values())).count("series", allTransactions.size()).end();
+        
+        if(!resolutions.equals(Arrays.asList(SeriesRollup.Resolution.DAILY)))
+        {
+            doMultiResolutionAnalysis(allTransactions.values());
+            return;
+        }
+        
+        //align data (by default discard any dates that dont exist for ALL industries)
         println("Aligning data");
+        phase = report.begin("align");
         alignData(allTransactions.values());
+        phase.rows(rowCount(allTransactions.values())).end();
         
         //set situation values in transaction days
-        println("Categorizing transactions");
+        println("Categorizing transactions with the " + classifier.getKernelName() + " classifier");
+        phase = report.begin("classify");
         setupSituations(allTransactions.values());
+        phase.rows(rowCount(allTransactions.values())).end();
         
         //determine relationships
-        println("Creating Itemsets");
-        ArrayList<ArrayList<TransactionDay>> allItemsets = createItemSets(allTransactions.values());
-        
-        //mine for frequent closed itemsets
-        println("Activating external library to mine for closed itemsets");
-        outputItemsets(allItemsets);
-        Runtime.getRuntime().exec("java -jar spmf.jar run FPClose data.dat output.dat 10%");
-        
-        //print analysis of output
-        translateOutput("output.dat");
+        if(lagDays > 0)
+        {
+            println("Creating lagged itemsets over " + lagDays + " days");
+            mineLagged(allTransactions.values());
+        }
+        else if(minerName.equals("vertical"))
+        {
+            println("Creating tidset bitmaps");
+            phase = report.begin("itemsets");
+            VerticalDatabase vertical = VerticalDatabase.fromSeries(allTransactions.values());
+            phase.rows(vertical.transactionCount).end();
+            mineItemsets(null, vertical);
+        }
+        else
+        {
+            println("Creating Itemsets");
+            phase = report.begin("itemsets");
+            List<int[]> allItemsets = createItemSets(allTransactions.values());
+            phase.rows(allItemsets.size()).end();
+            mineItemsets(allItemsets, null);
+        }
     }
     
-    private static void translateOutput(String file)
-    throws FileNotFoundException
+    // Roll the loaded days up once, then align, classify and mine every resolution on its own thread
+    private static void doMultiResolutionAnalysis(Collection<TransactionSeries> daily)
+    throws Exception
     {
-        Scanner sc = new Scanner(new File(file));
-
-        while(sc.hasNextLine())
+        println("Rolling up " + resolutions);
+        RunReport.Phase phase = report.begin("rollup");
+        final Map<SeriesRollup.Resolution, List<TransactionSeries>> bySeries =
+                SeriesRollup.rollup(daily, resolutions, movingAverageType, movingAverageWindow);
+        phase.rows(rowCount(daily)).end();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(resolutions.size());
+        LinkedHashMap<SeriesRollup.Resolution, Future<ResolutionRun>> runs = new LinkedHashMap<SeriesRollup.Resolution, Future<ResolutionRun>>();
+        try
         {
-            String raw = sc.nextLine();
-            String[] rawSplit = raw.split(" #SUP: ");
-            String support = rawSplit[1];
-            String[] itemset = rawSplit[0].split(" ");
+            for(final SeriesRollup.Resolution resolution : resolutions)
+                runs.put(resolution, executor.submit(() -> mineResolution(resolution, bySeries.get(resolution))));
             
-            if(itemset.length > 1)
+            //print and write in the order asked for, whichever finishes first
+            for(Map.Entry<SeriesRollup.Resolution, Future<ResolutionRun>> e : runs.entrySet())
             {
-                print("Itemset: ");
-                
-                int len = itemset.length;
-                
-                print(intToIndustry.get(Integer.valueOf(itemset[0])) + ", ");
-                
-                for (int i = 1; i < len; i++)
-                {
-                    print(intToIndustry.get(Integer.valueOf(itemset[i])));
-                }
-                
-                println(". Support: " + support);
+                ResolutionRun result = e.getValue().get();
+                String name = e.getKey().toString().toLowerCase();
+                println("Closed itemsets at " + name + " resolution");
+                println(result.run.summary());
+                outputRun(result.run, result.transactions, name + ".");
             }
         }
+        finally
+        {
+            executor.shutdownNow();
+        }
     }
     
-    private static void outputItemsets(ArrayList<ArrayList<TransactionDay>> allItemsets)
-    throws FileNotFoundException, UnsupportedEncodingException
+    // The closed itemsets of one resolution and the transactions they came from, null for vertical mining
+    private static class ResolutionRun
     {
-        PrintWriter writer = new PrintWriter("data.dat", "UTF-8");
+        final MiningRun run;
+        final List<int[]> transactions;
         
-        for(ArrayList<TransactionDay> itemset : allItemsets)
+        ResolutionRun(MiningRun run, List<int[]> transactions)
         {
-            String line = "";
-            
-            for (TransactionDay item : itemset)
-            {
-                String industry = item.industry;
-                Integer industryInt = industryToInt.get(industry);
-                
-                if(industryInt == null)
-                {
-                    println(industry);
-                }
-                
-                line += (industryToInt.get(item.industry) + " ");
-            }
-            
-            line = line.substring(0, line.length() - 1);
-            
-            writer.println(line);
+            this.run = run;
+            this.transactions = transactions;
         }
-        
-        writer.close();
     }
     
-    private static ArrayList<ArrayList<TransactionDay>> createItemSets(Collection<ArrayList<TransactionDay>> allTransactions)
+    // Align, classify and mine one resolution; only touches its own series
+    private static ResolutionRun mineResolution(SeriesRollup.Resolution resolution, List<TransactionSeries> series)
     {
-        ArrayList<Iterator<TransactionDay>> industryIterators = new ArrayList<Iterator<TransactionDay>>();
+        String name = resolution.toString().toLowerCase();
+        RunReport.Phase phase = report.begin(name + ".align");
+        alignData(series);
+        phase.rows(rowCount(series)).end();
+        
+        phase = report.begin(name + ".classify");
+        setupSituations(series);
+        phase.rows(rowCount(series)).end();
+        
+        phase = report.begin(name + ".mine");
+        MiningRun run;
+        List<int[]> allItemsets = null;
+        if(minerName.equals("vertical"))
+        {
+            VerticalDatabase vertical = VerticalDatabase.fromSeries(series);
+            run = MiningRun.run(vertical, ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount));
+        }
+        else
+        {
+            allItemsets = createItemSets(series);
+            run = MiningRun.run(ClosedItemsetMiner.create(minerName, miningThreads), allItemsets,
+                    ClosedItemsetMiner.minSupportCount(minSupport, allItemsets.size()));
+        }
+        phase.rows(run.transactions).count("itemsets", run.itemsets.size()).end();
+        return new ResolutionRun(run, allItemsets);
+    }
     
-        for (ArrayList<TransactionDay> industry : allTransactions)
+    // Mine day d together with days d - 1 .. d - lagDays, items tagged with their lag
+    private static void mineLagged(Collection<TransactionSeries> allTransactions)
+    throws IOException
+    {
+        if(industryToInt.isEmpty())
         {
-            industryIterators.add(industry.iterator());
+            MiningLog.warn("No industries to pair with earlier days.");
+            return;
         }
         
-        boolean daysLeft = true;
+        RunReport.Phase phase = report.begin("itemsets");
+        lagged = new LaggedTransactions(lagDays, Collections.max(industryToInt.values()));
+        TransactionSink.Collector collector = null;
+        VerticalDatabase.Builder builder = null;
+        TransactionSink sink;
+        if(minerName.equals("vertical"))
+            sink = builder = new VerticalDatabase.Builder();
+        else
+            sink = collector = new TransactionSink.Collector();
+        long transactions = lagged.build(allTransactions, sink);
+        phase.rows(transactions).end();
         
-        ArrayList<ArrayList<TransactionDay>> allItemsets = new ArrayList<ArrayList<TransactionDay>>();
+        phase = report.begin("mine");
+        MiningRun run;
+        if(builder != null)
+        {
+            VerticalDatabase vertical = builder.build();
+            run = MiningRun.run(vertical, ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount));
+        }
+        else
+        {
+            run = MiningRun.run(ClosedItemsetMiner.create(minerName, miningThreads), collector.transactions,
+                    ClosedItemsetMiner.minSupportCount(minSupport, collector.transactions.size()));
+        }
+        List<Itemset> anchored = lagged.anchored(run.itemsets);
+        phase.rows(run.transactions).count("itemsets", anchored.size()).end();
+        println(run.summary());
+        println(anchored.size() + " of them start on the transaction day, the rest are the same itemsets shifted");
         
-        while(daysLeft)
+        phase = report.begin("output");
+        if(!itemsetIndexFile.isEmpty())
         {
-            ArrayList<TransactionDay> increasing = new ArrayList<TransactionDay>();
-            ArrayList<TransactionDay> decreasing = new ArrayList<TransactionDay>();
-            
-            for(Iterator<TransactionDay> iter : industryIterators)
+            //lagged items are indexed under their described names, e.g. "AAPL up 2 days earlier"
+            HashMap<Integer, String> laggedNames = new HashMap<Integer, String>();
+            for(Itemset itemset : anchored)
             {
-                TransactionDay day = iter.next();
-                if(day.situation == TransactionDay.Situation.INCREASING)
-                {
-                    increasing.add(day);
-                }
-                else if (day.situation == TransactionDay.Situation.DECREASING)
-                {
-                    decreasing.add(day);
-                }
-                
-                if(!iter.hasNext())
-                    daysLeft = false;
+                for(int item : itemset.items)
+                    laggedNames.computeIfAbsent(item, i -> lagged.describe(i, intToIndustry));
             }
-            
-            if(!increasing.isEmpty())
+            ItemsetIndex.write(itemsetIndexFile, anchored, laggedNames);
+        }
+        translateOutput(anchored);
+        phase.rows(anchored.size()).end();
+        if(rules)
+            outputRules(run.itemsets, anchored, run.transactions, "");
+        lagged = null;
+    }
+    
+    // Mine either the transactions or their vertical bitmaps, then report the closed itemsets
+    private static void mineItemsets(List<int[]> allItemsets, VerticalDatabase vertical)
+    throws IOException
+    {
+        //mine for frequent closed itemsets
+        RunReport.Phase phase = report.begin("mine");
+        MiningRun run;
+        if(vertical != null)
+        {
+            int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount);
+            println("Mining closed itemsets with vertical CHARM at min support " + minSupport);
+            run = MiningRun.run(vertical, minSupportCount);
+        }
+        else
+        {
+            ClosedItemsetMiner miner = ClosedItemsetMiner.create(minerName, miningThreads);
+            int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, allItemsets.size());
+            println("Mining closed itemsets with " + miner.getName() + " at min support " + minSupport);
+            run = MiningRun.run(miner, allItemsets, minSupportCount);
+        }
+        phase.rows(run.transactions).count("itemsets", run.itemsets.size()).end();
+        println(run.summary());
+        outputRun(run, allItemsets, "");
+    }
+    
+    // Exports, index, printed itemsets and rules of one run; prefix names its files and phases, e.g. "weekly."
+    private static void outputRun(MiningRun run, List<int[]> allItemsets, String prefix)
+    throws IOException
+    {
+        RunReport.Phase phase = report.begin(prefix + "output");
+        if(allItemsets != null)
+        {
+            //keep the SPMF text files for comparison with the external library
+            if(exportSpmf)
             {
-                allItemsets.add(increasing);
+                outputItemsets(prefixed(prefix, "data.dat"), allItemsets);
+                outputClosedItemsets(prefixed(prefix, "output.dat"), run.itemsets);
             }
             
-            if(!decreasing.isEmpty())
-            {
-                allItemsets.add(decreasing);
-            }
+            if(exportBinary)
+                BinaryItemsetFile.writeTransactions(prefixed(prefix, "data.bin"), allItemsets, intToIndustry);
         }
         
-        return allItemsets;
+        if(exportBinary)
+            BinaryItemsetFile.writeItemsets(prefixed(prefix, "output.bin"), run.itemsets, intToIndustry);
+        
+        if(!itemsetIndexFile.isEmpty())
+            ItemsetIndex.write(prefixed(prefix, itemsetIndexFile), run.itemsets, intToIndustry);
+        
+        //print analysis of output
+        translateOutput(run.itemsets);
+        phase.rows(run.itemsets.size()).end();
+        if(rules)
+            outputRules(run.itemsets, run.itemsets, run.transactions, prefix);
     }
     
-
-    private static void setupSituations(Collection<ArrayList<TransactionDay>> industries)
-    {                        
-        for(ArrayList<TransactionDay> list: industries){
-            for(TransactionDay t: list){
-                    if(t.capital > 1.25*t.movingAverage){
-                        t.situation = TransactionDay.Situation.INCREASING;
-                        println(t.toString() + t.situation);
-                    }
-                    if(t.capital < .75*t.movingAverage){
-                        t.situation = TransactionDay.Situation.DECREASING;
-                        println(t.toString() + t.situation);
-                    }
-                    else{
-                        t.situation = TransactionDay.Situation.STABLE;
-                        println(t.toString() + t.situation);
-                    }
-            }
-        }        
+    // "weekly." and "out/rules.csv" give "out/weekly.rules.csv"
+    private static String prefixed(String prefix, String file)
+    {
+        if(prefix.isEmpty())
+            return file;
+        File f = new File(file);
+        return new File(f.getParentFile(), prefix + f.getName()).getPath();
     }
     
-    private static void alignData(Collection<ArrayList<TransactionDay>> industries)
+    // Incremental state, lagged items and the streaming pipeline are daily only, reject them with other resolutions
+    private static void checkResolutions()
     {
-        ArrayList<HashSet<String>> dateSetList = new ArrayList<HashSet<String>>();
+        if(resolutions.equals(Arrays.asList(SeriesRollup.Resolution.DAILY)))
+            return;
         
-        //set up the date set, to enable quick lookups of the existence of a date
-        for (ArrayList<TransactionDay> transactionList : industries)
+        ArrayList<String> daily = new ArrayList<String>();
+        if(incremental)
+            daily.add("incremental=true");
+        if(lagDays > 0)
+            daily.add("lagDays=" + lagDays);
+        if(pipelineMode.equals("streaming"))
+            daily.add("pipelineMode=streaming");
+        if(!daily.isEmpty())
+            throw new IllegalArgumentException("resolutions=" + resolutions.toString().toLowerCase().replaceAll("[\\[\\] ]", "")
+                    + " cannot be combined with " + String.join(", ", daily) + ", which only work on daily transactions");
+    }
+    
+    // Rules from the itemsets in "from", supports looked up among all closed itemsets
+    private static void outputRules(List<Itemset> closed, List<Itemset> from, int transactions, String prefix)
+    throws IOException
+    {
+        RunReport.Phase phase = report.begin(prefix + "rules");
+        AssociationRules associationRules = new AssociationRules(closed, transactions, ruleMaxItems, miningThreads);
+        if(!rulesFile.isEmpty())
         {
-            HashSet<String> dateSet = new HashSet<String>();
-            for(TransactionDay day : transactionList)
-            {
-                dateSet.add(day.date);
-            }
-            dateSetList.add(dateSet);
+            String file = prefixed(prefix, rulesFile);
+            long written = associationRules.writeCsv(from, minConfidence, file, IndustryMining::itemName);
+            phase.count("rules", written);
+            println("Wrote " + written + " rules at confidence " + minConfidence + " to " + file);
         }
         
-        //begin aligning the data
-        for (ArrayList<TransactionDay> industry : industries)
+        List<AssociationRules.Rule> top = associationRules.topByLift(from, minConfidence, rulesTopK);
+        println("Top " + top.size() + " rules by lift at confidence " + minConfidence + ":");
+        for(AssociationRules.Rule rule : top)
+            println("Rule: " + rule.toString(IndustryMining::itemName));
+        phase.rows(from.size()).end();
+    }
+    
+    // Walk all industries forward by date in lockstep, emitting transactions as each day completes
+    private static void doStreamingAnalysis(String[] dates)
+    throws SQLException, IOException
+    {
+        // the same industries the batch load keeps: at least one full moving average window in range
+        Map<String, Integer> days = source.countDays(dates[0], dates[1], true);
+        HashMap<String, Integer> entityIndex = new HashMap<String, Integer>();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for(int id = 0; id < intToIndustry.size(); id++)
         {
-            Iterator<TransactionDay> iter = industry.iterator();
-            while(iter.hasNext())
+            String industry = intToIndustry.get(id);
+            Integer count = days.get(industry);
+            if(count != null && count >= movingAverageWindow)
             {
-                TransactionDay day = iter.next();
-                
-                boolean existsInAll = true;
-                for(HashSet<String> dateSet : dateSetList)
-                {
-                    if (!dateSet.contains(day.date))
-                    {
-                        existsInAll = false;
-                        break;
-                    }
-                }
-                
-                if(!existsInAll)
-                    iter.remove();
+                entityIndex.put(industry, ids.size());
+                ids.add(id);
             }
         }
+        
+        TransactionSink.Collector collector = null;
+        VerticalDatabase.Builder builder = null;
+        TransactionSink sink;
+        if(minerName.equals("vertical"))
+            sink = builder = new VerticalDatabase.Builder();
+        else
+            sink = collector = new TransactionSink.Collector();
+        
+        RunReport.Phase phase = report.begin("stream");
+        StreamingPipeline pipeline = new StreamingPipeline(ids.stream().mapToInt(Integer::intValue).toArray(),
+                movingAverageType, movingAverageWindow, alignPolicy, classifier, sink);
+        
+        streamIndustryDays(dates[0], dates[1], entityIndex, pipeline);
+        pipeline.finish();
+        phase.rows(pipeline.getRows()).count("transactions", pipeline.getTransactions()).end();
+        
+        println("Streamed " + pipeline.getRows() + " rows over " + pipeline.getDaysSeen() + " days, "
+                + pipeline.getDaysEmitted() + " aligned days gave " + pipeline.getTransactions() + " transactions");
+        
+        mineItemsets(collector != null ? collector.transactions : null, builder != null ? builder.build() : null);
     }
-
-   
-    private static ArrayList<String> getIndustries() throws SQLException
+    
+    // Rows of every industry between the dates, in date order, into the pipeline; entityIndex gives each industry's entity
+    private static void streamIndustryDays(String startDate, String endDate, final Map<String, Integer> entityIndex,
+                                           final StreamingPipeline pipeline)
+    throws SQLException, IOException
     {
-        //String array to return
-        ArrayList<String> industries = new ArrayList<String>();
-        // Format and execute the query
-        PreparedStatement	pstmt	= conn.prepareStatement("select Industry from Company natural join PriceVolume " +
-                                                "group by Industry;");
-        ResultSet result = pstmt.executeQuery();
-        // Check for query result
-        if (result.next())
-        {
-            // Get first result info
-            String currIndustry = result.getString("Industry");
-            industries.add(currIndustry);
+        if(conn != null && industryAggregation.equals("sql"))
+        {
+            // the database sums each industry's day, one row per industry and day crosses the wire
+            PreparedStatement pstmt = conn.prepareStatement(
+                    " select Industry, TransDate, sum(ClosePrice * Volume) from PriceVolume natural join Company"
+                    +" where TransDate between ? and ? group by TransDate, Industry order by TransDate ASC",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            pstmt.setString(1, startDate);
+            pstmt.setString(2, endDate);
+            ResultSet querySet = pstmt.executeQuery();
             
-            industryToInt.put(currIndustry, 0);
-            intToIndustry.put(0, currIndustry);
-
-            int i = 1;
-            // Iterate through remaining results
-            while (result.next())
+            long rows = 0;
+            for(; querySet.next(); rows++)
             {
-                currIndustry = result.getString("Industry");
-                
-                industryToInt.put(currIndustry, i);
-                intToIndustry.put(i, currIndustry);
-                
-                industries.add(currIndustry);
-                i++;
+                Integer entity = entityIndex.get(querySet.getString(1));
+                if(entity != null)
+                    pipeline.add(entity, TransactionSeries.toEpochDay(querySet.getDate(2)), querySet.getDouble(3));
             }
+            RunReport.countQuery(rows, fetchSize);
+            pstmt.close();
         }
         else
         {
-            System.out.printf("Error finding industries.%n");
+            // the pipeline sums the companies of an industry per day itself
+            final Map<String, String> industryOf = source.getTickerIndustries();
+            source.forEachPriceByDate(startDate, endDate, (ticker, date, closePrice, volume) ->
+            {
+                Integer entity = entityIndex.get(industryOf.get(ticker));
+                if(entity != null)
+                    pipeline.add(entity, date, closePrice * volume);
+            });
         }
-            
-        pstmt.close();
-
-        return industries;
-    }//end getIndustries    
+    }
     
+    private static String itemName(int item)
+    {
+        return lagged != null ? lagged.describe(item, intToIndustry) : intToIndustry.get(item);
+    }
     
-    private static String[] getStartEndDates(ArrayList<String> industries)
-    throws SQLException
+    private static void translateOutput(List<Itemset> itemsets)
     {
-        // Placeholder until actual dates calculated, to return
-        String[] dates = new String[]{"start", "end"};
-        // Find start/end for each industry first
-        ArrayList<String[]> allDates = new ArrayList<String[]>();
-        
-        for (String industry : industries)
+        //itemsets come sorted by support, summary mode prints only the strongest
+        int limit = Integer.MAX_VALUE;
+        if(outputMode.equals("summary"))
         {
-            PreparedStatement minDateStatement = conn.prepareStatement("select Ticker, TransDate from Company natural join PriceVolume where Industry = ? order by TransDate asc limit 1;");
-            minDateStatement.setString(1, industry);
-            ResultSet result = minDateStatement.executeQuery();
-            
-            String currStart = "";
-            
-            // Check for query result
-            if (result.next())
+            int multi = 0;
+            for(Itemset itemset : itemsets)
             {
-                // Set the current start/end to first transaction
-                currStart = result.getString("TransDate");
-                
+                if(itemset.size() > 1)
+                    multi++;
             }
-            else
+            println(multi + " closed itemsets of two or more industries, the " + Math.min(multi, summaryItemsets) + " strongest:");
+            limit = summaryItemsets;
+        }
+        
+        StringBuilder line = new StringBuilder();
+        for(Itemset itemset : itemsets)
+        {
+            if(itemset.size() > 1 && limit-- > 0)
             {
-                System.out.printf("No data. No analysis.%n");
+                line.setLength(0);
+                line.append("Itemset: ").append(itemName(itemset.items[0]));
+                
+                for (int i = 1; i < itemset.size(); i++)
+                {
+                    line.append(", ").append(itemName(itemset.items[i]));
+                }
+                
+                line.append(". Support: ").append(itemset.support);
+                println(line.toString());
             }
+        }
+    }
+    
+    // Closed itemsets in the SPMF output format
+    private static void outputClosedItemsets(String file, List<Itemset> itemsets)
+    throws FileNotFoundException, UnsupportedEncodingException
+    {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
         
+        for(Itemset itemset : itemsets)
+        {
+            writer.println(itemset.toString());
+        }
         
+        writer.close();
+    }
+    
+    private static void outputItemsets(String file, List<int[]> allItemsets)
+    throws FileNotFoundException, UnsupportedEncodingException
+    {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        StringBuilder line = new StringBuilder();
         
-            PreparedStatement maxDateStatement = conn.prepareStatement("select Ticker, TransDate from Company natural join PriceVolume where Industry = ? order by TransDate desc limit 1;");
-            maxDateStatement.setString(1, industry);
-            result = maxDateStatement.executeQuery();
-            
-            String currEnd = "";
+        for(int[] itemset : allItemsets)
+        {
+            line.setLength(0);
             
-            // Check for query result
-            if (result.next())
+            for (int i = 0; i < itemset.length; i++)
             {
-                // Set the current start/end to first transaction
-                currEnd = result.getString("TransDate");
-                
+                if (i > 0)
+                    line.append(' ');
+                line.append(itemset[i]);
             }
-            else
-            {
-                System.out.printf("No data. No analysis.%n");
-            }
-            
-            maxDateStatement.close();
-            
-            
-            // Add Start/End for this industry to allDates
-            allDates.add(new String[]{currStart, currEnd});
             
-            minDateStatement.close();
-            
-        }// end for each industry
+            writer.println(line);
+        }
         
-        if (!allDates.isEmpty())
+        writer.close();
+    }
+    
+    // One transaction per day and direction, holding the ids of every industry that moved that way
+    private static List<int[]> createItemSets(Collection<TransactionSeries> allTransactions)
+    {
+        ArrayList<TransactionSeries> industries = new ArrayList<TransactionSeries>();
+        int days = Integer.MAX_VALUE;
+    
+        for (TransactionSeries industry : allTransactions)
         {
-            String[] currDates = allDates.get(0);
-            
-            for (String[] date : allDates)
+            if(industry.size > 0)
             {
-            if ((date[0].compareTo(currDates[0])) > 0)
+                industries.add(industry);
+                days = Math.min(days, industry.size);
+            }
+        }
+        
+        ArrayList<int[]> allItemsets = new ArrayList<int[]>();
+        if (industries.isEmpty())
+            return allItemsets;
+        
+        int[] increasing = new int[industries.size()];
+        int[] decreasing = new int[industries.size()];
+        
+        for (int day = 0; day < days; day++)
+            createDayItemSets(industries, day, increasing, decreasing, allItemsets);
+        
+        return allItemsets;
+    }
+    
+    // The increasing and decreasing transactions of one aligned day
+    private static void createDayItemSets(List<TransactionSeries> industries, int day, int[] increasing, int[] decreasing, List<int[]> allItemsets)
+    {
+        int increasingCount = 0;
+        int decreasingCount = 0;
+        
+        for(TransactionSeries industry : industries)
+        {
+            byte situation = industry.situation[day];
+            if(situation == TransactionSeries.INCREASING)
             {
-                currDates[0] = date[0];
+                increasing[increasingCount++] = industry.id;
             }
-            if ((date[1].compareTo(currDates[1])) < 0)
+            else if (situation == TransactionSeries.DECREASING)
             {
-                currDates[1] = date[1];
+                decreasing[decreasingCount++] = industry.id;
             }
+        }
+        
+        if(increasingCount > 0)
+        {
+            allItemsets.add(Arrays.copyOf(increasing, increasingCount));
+        }
+        
+        if(decreasingCount > 0)
+        {
+            allItemsets.add(Arrays.copyOf(decreasing, decreasingCount));
+        }
+    }
+    
+    // Stream only the days after the saved state through the pipeline, resuming every moving average,
+    // and apply them to the saved closed itemsets
+    private static void doIncrementalAnalysis(ArrayList<String> industries)
+    throws SQLException, IOException
+    {
+        RunReport.Phase phase = report.begin("incremental");
+        final IncrementalClosedItemsets state = IncrementalClosedItemsets.load(incrementalState, incrementalWindow,
+                industryToInt, movingAverageType, movingAverageWindow);
+        String start;
+        if(state.getLastDate() == Integer.MIN_VALUE)
+        {
+            println("No saved state in " + incrementalState + ", reading the whole history once");
+            start = getStartEndDates(industries)[0];
+        }
+        else
+        {
+            println("Closed itemsets in " + incrementalState + " are up to " + TransactionSeries.toDateString(state.getLastDate()));
+            start = TransactionSeries.toDateString(state.getLastDate() + 1);
+        }
+        String end = java.time.LocalDate.now().toString();
+        
+        // every industry takes part once its moving average is ready, as no run knows which ever will be
+        int[] ids = new int[intToIndustry.size()];
+        String[] names = new String[ids.length];
+        for(int id = 0; id < ids.length; id++)
+        {
+            ids[id] = id;
+            names[id] = intToIndustry.get(id);
+        }
+        StreamingPipeline pipeline = new StreamingPipeline(ids, movingAverageType, movingAverageWindow, alignPolicy, classifier, state);
+        pipeline.setDayListener(state);
+        pipeline.joinWhenReady();
+        state.resume(pipeline, names);
+        
+        streamIndustryDays(start, end, industryToInt, pipeline);
+        pipeline.finish();
+        state.remember(pipeline, names);
+        state.save(incrementalState, industryToInt);
+        phase.rows(pipeline.getRows()).count("closed", state.getClosedCount()).end();
+        println("Applied " + pipeline.getDaysEmitted() + " of " + pipeline.getDaysSeen() + " new days, "
+                + state.getTransactionCount() + " transactions and " + state.getClosedCount() + " closed itemsets held");
+        
+        final int minSupportCount = ClosedItemsetMiner.minSupportCount(minSupport, state.getTransactionCount());
+        MiningRun run = MiningRun.run("incremental", state.getTransactionCount(), minSupportCount,
+                () -> state.closedItemsets(minSupportCount));
+        println(run.summary());
+        
+        //print analysis of output
+        phase = report.begin("output");
+        translateOutput(run.itemsets);
+        phase.rows(run.itemsets.size()).end();
+    }
+    
+
+    // Days held over all series
+    private static long rowCount(Collection<TransactionSeries> allTransactions)
+    {
+        long rows = 0;
+        for (TransactionSeries series : allTransactions)
+            rows += series.size;
+        return rows;
+    }
+    
+    private static void setupSituations(Collection<TransactionSeries> industries)
+    {                        
+        //rows are only printed at debug level
+        boolean debug = MiningLog.isEnabled(MiningLog.Level.DEBUG);
+        for(TransactionSeries series: industries)
+        {
+            classifier.classify(series);
+            if(debug)
+            {
+                for(int i = 0; i < series.size; i++)
+                    MiningLog.debug(series.getDay(i).toString() + series.getSituation(i));
             }
-            
-            dates[0] = currDates[0];
-            dates[1] = currDates[1];
+        }        
+    }
+    
+    private static void alignData(Collection<TransactionSeries> industries)
+    {
+        int days = SeriesAligner.align(industries, alignPolicy);
+        println("Aligned " + industries.size() + " series on " + days + " days");
+    }
+
+   
+    private static ArrayList<String> getIndustries() throws SQLException, IOException
+    {
+        //String array to return
+        ArrayList<String> industries = new ArrayList<String>(source.getIndustries());
+        
+        for (int i = 0; i < industries.size(); i++)
+        {
+            industryToInt.put(industries.get(i), i);
+            intToIndustry.put(i, industries.get(i));
+        }
+        
+        if (industries.isEmpty())
+        {
+            MiningLog.warn("Error finding industries.");
         }
 
-        return dates;
+        return industries;
+    }//end getIndustries    
+    
+    
+    private static String[] getStartEndDates(ArrayList<String> industries)
+    throws SQLException, IOException
+    {
+        // Latest start and earliest end over all industries, from the shared date range index
+        DateRangeIndex index = source.getDateRanges();
+        
+        if (index.isEmpty())
+        {
+            MiningLog.warn("No data. No analysis.");
+        }
+        
+        return index.commonIndustryRange(industries);
         
     }// end getStartEndDates\
 
     
-    private static ArrayList<TransactionDay> getIndustryData(String industry, String startDate, String endDate)
-    throws SQLException
+    private static TransactionSeries getIndustryData(PriceDataSource source, String industry, String startDate, String endDate)
+    throws SQLException, IOException
     {
         // To return
-        ArrayList<TransactionDay> results = new ArrayList<TransactionDay>();
+        final TransactionSeries results = new TransactionSeries(industry, industryToInt.get(industry));
         
-        ArrayList<Double> movingAvgList = new ArrayList<Double>();
+        final MovingAverage movingAvg = MovingAverage.create(movingAverageType, movingAverageWindow);
         
-        PreparedStatement pstmtIndustryData;
-
-        pstmtIndustryData = conn.prepareStatement(
-                " select P.TransDate, P.ClosePrice, P.Volume"
-                +" from PriceVolume P natural join Company "
-                +" where industry =  ? and TransDate between ? and ? order by TransDate DESC");
-        //[date, openPrice, closePrice, highPrice, lowPrice, volume]
-        pstmtIndustryData.setString(1, industry);
-                    pstmtIndustryData.setString(2, startDate);
-                    pstmtIndustryData.setString(3, endDate);                                                            
-        ResultSet querySet = pstmtIndustryData.executeQuery();
-        
-        // Set up first day for do loop
-        if (querySet.next())
-        {
-        
-            TransactionDay day = new TransactionDay();
-            day.industry = industry;
-            day.date = querySet.getString(1);
-
-            do
-            {                           
-                String date = querySet.getString("P.TransDate");
-                double closingPrice = querySet.getDouble("P.ClosePrice");
-                double volume = querySet.getDouble("P.Volume");
-
-                day.capital += closingPrice * volume;
-
-                if(!date.equals(day.date))
-                {
-                    movingAvgList.add(day.capital);
-                    
-                    
-                    //if the moving average list is fully populated, set the moving average for that day
-                    //if not set it to -1 because no moving average is possible for that day
-                    if(movingAvgList.size() >= movingAverageWindow)
-                    {
-                        movingAvgList = new ArrayList<Double>(movingAvgList.subList(movingAvgList.size() - movingAverageWindow, movingAvgList.size()));
-                        
-                        double average = 0.0d;
-                        
-                        for(Double val : movingAvgList)
-                        {
-                            average+= val;
-                        }
-                        
-                        average = average/movingAverageWindow;
-                        
-                        day.movingAverage = average;
-                    }
-                    else
-                    {
-                        day.movingAverage = -1.0d;
-                    }
-                
-                
-                    results.add(day);
-                    
-                    day = new TransactionDay();
-                    day.industry = industry;
-                    day.date = date;
-                }
-                
-            } while(querySet.next());
-            
-        } else
+        //one total per day, no moving average is possible (-1) until a full window has been seen
+        source.forEachIndustryDay(industry, startDate, endDate, (date, capital) -> results.add(date, capital, movingAvg.add(capital)));
+        
+        if(results.size == 0)
         {
-            print("Error finding transaction data.");
+            MiningLog.warn("Error finding transaction data for " + industry);
         }
         
-        pstmtIndustryData.close();
+        //an industry without a full window would empty the intersection for every other industry
+        if(results.size < movingAverageWindow)
+        {
+            if(results.size > 0)
+                MiningLog.warn("Fewer days than the moving average window for " + industry + ", leaving it out");
+            return null;
+        }
         
         //truncate results to remove days that dont have a moving average value
+        results.dropFirst(movingAverageWindow - 1);
         
-        results = new ArrayList<TransactionDay>(results.subList(movingAverageWindow - 1, results.size()));
-        
+        results.trimToSize();
         return results;
     }//end getIndustryData    
     
@@ -0,0 +1,93 @@
+/*
+ * Itemset
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * A mined itemset: sorted company or industry ids and the number of
+ * transactions that contain all of them.
+ */
+
+import java.util.*;
+
+public class Itemset
+{
+    // Highest support first, then shorter itemsets, then by item ids
+    public static final Comparator<Itemset> CANONICAL = new Comparator<Itemset>()
+    {
+        public int compare(Itemset a, Itemset b)
+        {
+            if (a.support != b.support)
+                return a.support > b.support ? -1 : 1;
+            if (a.items.length != b.items.length)
+                return a.items.length < b.items.length ? -1 : 1;
+            for (int i = 0; i < a.items.length; i++)
+            {
+                if (a.items[i] != b.items[i])
+                    return a.items[i] < b.items[i] ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    public final int[] items;
+    public final int support;
+
+
+    public Itemset(int[] items, int support)
+    {
+        this.items = items;
+        this.support = support;
+    }
+
+    public int size()
+    {
+        return items.length;
+    }
+
+    // True if every item of this itemset is in the sorted array other
+    public boolean isSubsetOf(int[] other)
+    {
+        return isSubset(items, other);
+    }
+
+    public static boolean isSubset(int[] small, int[] large)
+    {
+        if (small.length > large.length)
+            return false;
+
+        int j = 0;
+        for (int item : small)
+        {
+            while (j < large.length && large[j] < item)
+                j++;
+            if (j == large.length || large[j] != item)
+                return false;
+            j++;
+        }
+        return true;
+    }
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof Itemset))
+            return false;
+        Itemset other = (Itemset) o;
+        return support == other.support && Arrays.equals(items, other.items);
+    }
+
+    public int hashCode()
+    {
+        return 31 * Arrays.hashCode(items) + support;
+    }
+
+    // SPMF output format, "1 4 7 #SUP: 12"
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int item : items)
+            sb.append(item).append(' ');
+        return sb.append("#SUP: ").append(support).toString();
+    }
+}//end class
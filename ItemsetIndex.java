@@ -0,0 +1,517 @@
+/*
+ * ItemsetIndex
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Persisted closed itemsets with an inverted index, so questions about a
+ * finished run ("which itemsets contain XOM?") are answered without
+ * mining again. Itemsets are numbered in Itemset.CANONICAL order, highest
+ * support first, so the first k ids of any posting list are that query's
+ * top k. Layout, big endian:
+ *
+ *   int magic 'IDX1', int version
+ *   int dictionary size, then per entry: int id, int byte length, UTF-8 name
+ *   int itemset count N, int distinct item count M, int item references T
+ *   int[N]     support of each itemset
+ *   int[N + 1] start of each itemset in the item array
+ *   int[T]     items of every itemset, sorted
+ *   int[M]     the distinct items, sorted
+ *   int[M + 1] start of each item's postings
+ *   int[T]     postings: ids of the itemsets holding the item, ascending
+ *
+ * The reader maps the file and reads the arrays in place, nothing is
+ * decoded up front except the dictionary.
+ *
+ * Usage: java ItemsetIndex <file.idx> top [k]
+ *        java ItemsetIndex <file.idx> contains <name> ...
+ *        java ItemsetIndex <file.idx> containing <name> ... [k]
+ *        java ItemsetIndex <file.idx> subsets <name> ... [k]
+ *        java ItemsetIndex <file.idx> any <name> ... [k]
+ *        java ItemsetIndex <file.idx> industry <industry> [k]
+ * industry reads the Company table of the data source in readerparams.txt.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class ItemsetIndex implements AutoCloseable
+{
+    public static final int MAGIC = 0x49445831;
+    public static final int VERSION = 1;
+
+
+    private final FileChannel channel;
+    private final HashMap<Integer, String> dictionary = new HashMap<Integer, String>();
+    private final HashMap<String, Integer> byName = new HashMap<String, Integer>();
+    private final int itemsetCount;
+    private final IntBuffer supports;
+    private final IntBuffer itemStarts;
+    private final IntBuffer items;
+    private final IntBuffer postingItems;
+    private final IntBuffer postingStarts;
+    private final IntBuffer postings;
+
+
+    public static ItemsetIndex open(String file) throws IOException
+    {
+        return new ItemsetIndex(Paths.get(file));
+    }
+
+    private ItemsetIndex(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException(path + " is larger than 2 GB");
+        MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        if (file.limit() < 8 || file.getInt(0) != MAGIC)
+            throw new IOException(path + " is not an itemset index");
+        if (file.getInt(4) != VERSION)
+            throw new IOException(path + " has unsupported version " + file.getInt(4));
+
+        int position = 8;
+        int dictionarySize = file.getInt(position);
+        position += 4;
+        for (int i = 0; i < dictionarySize; i++)
+        {
+            int id = file.getInt(position);
+            byte[] name = new byte[file.getInt(position + 4)];
+            ByteBuffer view = file.duplicate();
+            view.position(position + 8);
+            view.get(name);
+            String text = new String(name, StandardCharsets.UTF_8);
+            dictionary.put(id, text);
+            byName.put(text, id);
+            position += 8 + name.length;
+        }
+
+        itemsetCount = file.getInt(position);
+        int itemCount = file.getInt(position + 4);
+        int references = file.getInt(position + 8);
+        position += 12;
+
+        supports = ints(file, position, itemsetCount);
+        position += 4 * itemsetCount;
+        itemStarts = ints(file, position, itemsetCount + 1);
+        position += 4 * (itemsetCount + 1);
+        items = ints(file, position, references);
+        position += 4 * references;
+        postingItems = ints(file, position, itemCount);
+        position += 4 * itemCount;
+        postingStarts = ints(file, position, itemCount + 1);
+        position += 4 * (itemCount + 1);
+        postings = ints(file, position, references);
+    }
+
+    private static IntBuffer ints(ByteBuffer file, int position, int count)
+    {
+        ByteBuffer view = file.duplicate();
+        view.position(position);
+        view.limit(position + 4 * count);
+        return view.slice().asIntBuffer();
+    }
+
+    public int size()
+    {
+        return itemsetCount;
+    }
+
+    public int support(int itemset)
+    {
+        return supports.get(itemset);
+    }
+
+    public int[] items(int itemset)
+    {
+        int start = itemStarts.get(itemset);
+        int[] result = new int[itemStarts.get(itemset + 1) - start];
+        for (int i = 0; i < result.length; i++)
+            result[i] = items.get(start + i);
+        return result;
+    }
+
+    public String name(int item)
+    {
+        String name = dictionary.get(item);
+        return name == null ? String.valueOf(item) : name;
+    }
+
+    // Item id of a dictionary name, or null
+    public Integer item(String name)
+    {
+        return byName.get(name);
+    }
+
+    // The k itemsets with the highest support
+    public int[] top(int k)
+    {
+        int[] result = new int[Math.min(Math.max(k, 0), itemsetCount)];
+        for (int i = 0; i < result.length; i++)
+            result[i] = i;
+        return result;
+    }
+
+    // Up to limit itemsets holding every one of the items, highest support first
+    public int[] containing(int[] query, int limit)
+    {
+        if (query.length == 0)
+            return top(limit);
+
+        // intersect from the shortest posting list, galloping through the longer ones
+        int[] lists = new int[query.length];
+        for (int i = 0; i < query.length; i++)
+        {
+            lists[i] = postingList(query[i]);
+            if (lists[i] < 0)
+                return new int[0];
+        }
+        Integer[] order = new Integer[lists.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = lists[i];
+        Arrays.sort(order, Comparator.comparingInt(this::postingLength));
+
+        int first = order[0];
+        int[] cursors = new int[order.length];
+        for (int i = 1; i < order.length; i++)
+            cursors[i] = postingStarts.get(order[i]);
+
+        int[] result = new int[Math.min(postingLength(first), Math.max(limit, 0))];
+        int found = 0;
+        for (int p = postingStarts.get(first); p < postingStarts.get(first + 1) && found < result.length; p++)
+        {
+            int itemset = postings.get(p);
+            boolean inAll = true;
+            for (int i = 1; i < order.length && inAll; i++)
+            {
+                cursors[i] = gallop(cursors[i], postingStarts.get(order[i] + 1), itemset);
+                inAll = cursors[i] < postingStarts.get(order[i] + 1) && postings.get(cursors[i]) == itemset;
+            }
+            if (inAll)
+                result[found++] = itemset;
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    // Id of the itemset that is exactly these items, or -1 when it was not mined
+    public int find(int[] query)
+    {
+        int[] sorted = query.clone();
+        Arrays.sort(sorted);
+        for (int itemset : containing(sorted, Integer.MAX_VALUE))
+        {
+            if (itemStarts.get(itemset + 1) - itemStarts.get(itemset) == sorted.length)
+                return itemset;
+        }
+        return -1;
+    }
+
+    // Up to limit itemsets made only of the given items, highest support first
+    public int[] subsetsOf(int[] query, int limit)
+    {
+        // an itemset is a subset when its postings were hit once per item it has
+        HashMap<Integer, Integer> hits = new HashMap<Integer, Integer>();
+        for (int item : query)
+        {
+            int list = postingList(item);
+            if (list < 0)
+                continue;
+            for (int p = postingStarts.get(list); p < postingStarts.get(list + 1); p++)
+                hits.merge(postings.get(p), 1, Integer::sum);
+        }
+
+        ArrayList<Integer> subsets = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Integer> e : hits.entrySet())
+        {
+            int itemset = e.getKey();
+            if (itemStarts.get(itemset + 1) - itemStarts.get(itemset) == e.getValue())
+                subsets.add(itemset);
+        }
+        Collections.sort(subsets);
+        int[] result = new int[Math.min(subsets.size(), Math.max(limit, 0))];
+        for (int i = 0; i < result.length; i++)
+            result[i] = subsets.get(i);
+        return result;
+    }
+
+    // Up to limit itemsets holding at least one of the items, highest support first
+    public int[] containingAny(int[] query, int limit)
+    {
+        // merge the posting lists, each already ascending
+        PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Comparator.comparingInt((int[] h) -> postings.get(h[0])));
+        for (int item : query)
+        {
+            int list = postingList(item);
+            if (list >= 0)
+                heads.add(new int[]{postingStarts.get(list), postingStarts.get(list + 1)});
+        }
+
+        int[] result = new int[Math.min(itemsetCount, Math.max(limit, 0))];
+        int found = 0;
+        while (!heads.isEmpty() && found < result.length)
+        {
+            int[] head = heads.poll();
+            int itemset = postings.get(head[0]);
+            if (found == 0 || result[found - 1] != itemset)
+                result[found++] = itemset;
+            if (++head[0] < head[1])
+                heads.add(head);
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // Position of the item in the posting tables, -1 when no itemset has it
+    private int postingList(int item)
+    {
+        int low = 0;
+        int high = postingItems.limit() - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int value = postingItems.get(mid);
+            if (value < item)
+                low = mid + 1;
+            else if (value > item)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private int postingLength(int list)
+    {
+        return postingStarts.get(list + 1) - postingStarts.get(list);
+    }
+
+    // First position in [from, to) whose itemset is not below target
+    private int gallop(int from, int to, int target)
+    {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && postings.get(high) < target)
+        {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (postings.get(mid) < target)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+
+    public static void write(String file, List<Itemset> mined, Map<Integer, String> dictionary) throws IOException
+    {
+        ArrayList<Itemset> itemsets = new ArrayList<Itemset>(mined);
+        itemsets.sort(Itemset.CANONICAL);
+
+        // postings per item, filled in itemset order so each list comes out ascending
+        TreeMap<Integer, int[]> counts = new TreeMap<Integer, int[]>();
+        int references = 0;
+        for (Itemset itemset : itemsets)
+        {
+            for (int item : itemset.items)
+                counts.computeIfAbsent(item, k -> new int[1])[0]++;
+            references += itemset.size();
+        }
+        int[] postingItems = new int[counts.size()];
+        int[] postingStarts = new int[counts.size() + 1];
+        HashMap<Integer, Integer> listOf = new HashMap<Integer, Integer>();
+        int list = 0;
+        for (Map.Entry<Integer, int[]> e : counts.entrySet())
+        {
+            postingItems[list] = e.getKey();
+            postingStarts[list + 1] = postingStarts[list] + e.getValue()[0];
+            listOf.put(e.getKey(), list++);
+        }
+        int[] postings = new int[references];
+        int[] fill = Arrays.copyOf(postingStarts, postingStarts.length);
+        for (int id = 0; id < itemsets.size(); id++)
+        {
+            for (int item : itemsets.get(id).items)
+                postings[fill[listOf.get(item)]++] = id;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            TreeMap<Integer, String> entries = new TreeMap<Integer, String>(dictionary);
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer, String> e : entries.entrySet())
+            {
+                byte[] name = e.getValue().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(e.getKey());
+                out.writeInt(name.length);
+                out.write(name);
+            }
+
+            out.writeInt(itemsets.size());
+            out.writeInt(postingItems.length);
+            out.writeInt(references);
+            for (Itemset itemset : itemsets)
+                out.writeInt(itemset.support);
+            int start = 0;
+            out.writeInt(start);
+            for (Itemset itemset : itemsets)
+            {
+                start += itemset.size();
+                out.writeInt(start);
+            }
+            for (Itemset itemset : itemsets)
+            {
+                for (int item : itemset.items)
+                    out.writeInt(item);
+            }
+            for (int item : postingItems)
+                out.writeInt(item);
+            for (int p : postingStarts)
+                out.writeInt(p);
+            for (int id : postings)
+                out.writeInt(id);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: java ItemsetIndex <file.idx> top [k]");
+            System.out.println("       java ItemsetIndex <file.idx> contains|containing|subsets|any <name> ... [k]");
+            System.out.println("       java ItemsetIndex <file.idx> industry <industry> [k]");
+            return;
+        }
+
+        try (ItemsetIndex index = open(args[0]))
+        {
+            // a trailing number is the result limit
+            int end = args.length;
+            int limit = 20;
+            if (end > 2 && args[end - 1].matches("\\d+"))
+                limit = Integer.parseInt(args[--end]);
+            List<String> names = Arrays.asList(args).subList(2, end);
+
+            // names are looked up before the clock starts, the industry's tickers may come from a database
+            int[] ids = null;
+            if (args[1].equals("industry"))
+                ids = index.resolve(industryTickers(String.join(" ", names)));
+            else if (!args[1].equals("top"))
+                ids = index.resolve(names);
+
+            long start = System.nanoTime();
+            int[] result;
+            switch (args[1])
+            {
+                case "top":
+                    result = index.top(limit);
+                    break;
+                case "contains":
+                    int found = index.find(ids);
+                    result = found < 0 ? new int[0] : new int[]{found};
+                    break;
+                case "containing":
+                    result = index.containing(ids, limit);
+                    break;
+                case "subsets":
+                    result = index.subsetsOf(ids, limit);
+                    break;
+                case "any":
+                case "industry":
+                    result = index.containingAny(ids, limit);
+                    break;
+                default:
+                    System.out.println("Unknown query " + args[1]);
+                    return;
+            }
+            long micros = (System.nanoTime() - start) / 1000L;
+
+            StringBuilder line = new StringBuilder();
+            for (int itemset : result)
+            {
+                line.setLength(0);
+                line.append("Itemset: ");
+                int[] items = index.items(itemset);
+                for (int i = 0; i < items.length; i++)
+                {
+                    if (i > 0)
+                        line.append(", ");
+                    line.append(index.name(items[i]));
+                }
+                line.append(". Support: ").append(index.support(itemset));
+                System.out.println(line);
+            }
+            System.out.println(result.length + " itemsets in " + micros + " us");
+        }
+    }
+
+    // Sorted distinct ids of the names; a name not in the dictionary becomes -1, which no itemset holds
+    private int[] resolve(Collection<String> names)
+    {
+        int[] ids = new int[names.size()];
+        int n = 0;
+        for (String name : names)
+        {
+            Integer id = byName.get(name);
+            if (id == null)
+                System.out.println("Not in the index: " + name);
+            ids[n++] = id == null ? -1 : id;
+        }
+        Arrays.sort(ids);
+
+        // a name given twice is one item
+        int distinct = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (distinct == 0 || ids[i] != ids[distinct - 1])
+                ids[distinct++] = ids[i];
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    private static List<String> industryTickers(String industry) throws Exception
+    {
+        Properties props = new Properties();
+        props.load(new FileInputStream("readerparams.txt"));
+        PriceDataSource source = PriceDataSource.create(new MiningConfig(props));
+        try
+        {
+            ArrayList<String> tickers = new ArrayList<String>();
+            for (Map.Entry<String, String> e : source.getTickerIndustries().entrySet())
+            {
+                if (industry.equals(e.getValue()))
+                    tickers.add(e.getKey());
+            }
+            return tickers;
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+}//end class
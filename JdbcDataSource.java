@@ -0,0 +1,261 @@
+/*
+ * JdbcDataSource
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * PriceDataSource over any JDBC database with the Company and PriceVolume
+ * tables: the campus MySQL server, or an embedded H2 or SQLite file seeded
+ * with DataSourceTool. The queries are plain SQL that all three accept.
+ */
+
+import java.sql.*;
+import java.util.*;
+
+public class JdbcDataSource implements PriceDataSource
+{
+    private final Connection conn;
+    private final int fetchSize;
+    // sum each industry's capital per day in the database instead of here
+    private final boolean sqlAggregation;
+    private String url;
+    private Properties connectionProps;
+    // queried on first use, for as long as this source is open
+    private DateRangeIndex dateRanges;
+
+
+    public JdbcDataSource(Connection conn, int fetchSize, boolean sqlAggregation)
+    {
+        this.conn = conn;
+        this.fetchSize = fetchSize;
+        this.sqlAggregation = sqlAggregation;
+    }
+
+    // Connect with dburl, loading dbDriver first (the MySQL driver for jdbc:mysql: urls)
+    public static JdbcDataSource connect(MiningConfig config) throws SQLException, ClassNotFoundException
+    {
+        String url = config.getString("dburl", null);
+        if (url == null)
+            throw new SQLException("No dburl in readerparams.txt");
+
+        String driver = config.getString("dbDriver", isMySql(url) ? "com.mysql.jdbc.Driver" : null);
+        if (driver != null)
+            Class.forName(driver);
+
+        Properties props = connectionProperties(url, config.getProperties());
+        JdbcDataSource source = new JdbcDataSource(DriverManager.getConnection(url, props),
+                config.getInt("fetchSize", 10000),
+                !config.getString("industryAggregation", "sql").equals("client"));
+        source.url = url;
+        source.connectionProps = props;
+        return source;
+    }
+
+    private static boolean isMySql(String url)
+    {
+        return url.startsWith("jdbc:mysql:");
+    }
+
+    // Connector/J ignores the analysis settings mixed into readerparams.txt, other drivers reject them
+    static Properties connectionProperties(String url, Properties all)
+    {
+        if (isMySql(url))
+            return all;
+
+        Properties props = new Properties();
+        for (String key : new String[]{"user", "password"})
+        {
+            if (all.getProperty(key) != null)
+                props.setProperty(key, all.getProperty(key));
+        }
+        return props;
+    }
+
+    public Connection getConnection()
+    {
+        return conn;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    // What the connection was opened with, for opening more like it
+    public Properties getConnectionProperties()
+    {
+        return connectionProps;
+    }
+
+    public List<String> getTickers() throws SQLException
+    {
+        return strings("select Ticker from Company");
+    }
+
+    public List<String> getIndustries() throws SQLException
+    {
+        return strings("select Industry from Company natural join PriceVolume group by Industry order by Industry");
+    }
+
+    public Map<String, String> getTickerIndustries() throws SQLException
+    {
+        LinkedHashMap<String, String> industries = new LinkedHashMap<String, String>();
+        PreparedStatement pstmt = conn.prepareStatement("select Ticker, Industry from Company");
+        ResultSet result = pstmt.executeQuery();
+        while (result.next())
+            industries.put(result.getString(1), result.getString(2));
+        pstmt.close();
+        RunReport.countQuery(industries.size(), 0);
+        return industries;
+    }
+
+    public synchronized DateRangeIndex getDateRanges() throws SQLException
+    {
+        if (dateRanges == null)
+            dateRanges = DateRangeIndex.load(conn);
+        return dateRanges;
+    }
+
+    public void forEachPrice(String ticker, String startDate, String endDate, PriceVisitor visitor) throws SQLException
+    {
+        PreparedStatement pstmt;
+        int param = 1;
+        if (ticker != null)
+        {
+            pstmt = conn.prepareStatement(
+                    " select Ticker, TransDate, ClosePrice, Volume from PriceVolume"
+                    +" where Ticker = ? and TransDate between ? and ? order by TransDate ASC");
+            pstmt.setString(param++, ticker);
+        }
+        else
+        {
+            // one pass over the whole range, streamed in fetchSize chunks
+            pstmt = conn.prepareStatement(
+                    " select Ticker, TransDate, ClosePrice, Volume from PriceVolume"
+                    +" where TransDate between ? and ? order by Ticker, TransDate ASC",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+        }
+        pstmt.setString(param++, startDate);
+        pstmt.setString(param, endDate);
+        visit(pstmt, visitor);
+    }
+
+    public void forEachPriceByDate(String startDate, String endDate, PriceVisitor visitor) throws SQLException
+    {
+        PreparedStatement pstmt = conn.prepareStatement(
+                " select Ticker, TransDate, ClosePrice, Volume from PriceVolume"
+                +" where TransDate between ? and ? order by TransDate ASC",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pstmt.setFetchSize(fetchSize);
+        pstmt.setString(1, startDate);
+        pstmt.setString(2, endDate);
+        visit(pstmt, visitor);
+    }
+
+    public void forEachIndustryDay(String industry, String startDate, String endDate, DailyAggregator.DaySink sink)
+    throws SQLException
+    {
+        PreparedStatement pstmt;
+        if (sqlAggregation)
+        {
+            // the database sums capital per day, one row per TransDate crosses the wire
+            pstmt = conn.prepareStatement(
+                    " select P.TransDate, sum(P.ClosePrice * P.Volume) as Capital"
+                    +" from PriceVolume P natural join Company "
+                    +" where Industry = ? and TransDate between ? and ?"
+                    +" group by P.TransDate order by P.TransDate ASC");
+        }
+        else
+        {
+            pstmt = conn.prepareStatement(
+                    " select P.TransDate, P.ClosePrice, P.Volume"
+                    +" from PriceVolume P natural join Company "
+                    +" where Industry = ? and TransDate between ? and ? order by TransDate ASC");
+        }
+        pstmt.setString(1, industry);
+        pstmt.setString(2, startDate);
+        pstmt.setString(3, endDate);
+        ResultSet querySet = pstmt.executeQuery();
+
+        long rows = 0;
+        if (sqlAggregation)
+        {
+            for (; querySet.next(); rows++)
+                sink.day(TransactionSeries.toEpochDay(querySet.getDate(1)), querySet.getDouble(2));
+        }
+        else
+        {
+            // sum the companies of each day client side, a day is complete when the next one starts
+            DailyAggregator days = new DailyAggregator(sink);
+            for (; querySet.next(); rows++)
+                days.add(TransactionSeries.toEpochDay(querySet.getDate(1)), querySet.getDouble(2) * querySet.getDouble(3));
+            days.finish();
+        }
+        pstmt.close();
+        RunReport.countQuery(rows, 0);
+    }
+
+    public Map<String, Integer> countDays(String startDate, String endDate, boolean byIndustry) throws SQLException
+    {
+        PreparedStatement pstmt;
+        if (byIndustry)
+        {
+            pstmt = conn.prepareStatement(
+                    " select Industry, count(distinct TransDate) from PriceVolume natural join Company"
+                    +" where TransDate between ? and ? group by Industry");
+        }
+        else
+        {
+            pstmt = conn.prepareStatement(
+                    " select Ticker, count(*) from PriceVolume"
+                    +" where TransDate between ? and ? group by Ticker");
+        }
+        pstmt.setString(1, startDate);
+        pstmt.setString(2, endDate);
+        ResultSet result = pstmt.executeQuery();
+
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        while (result.next())
+            counts.put(result.getString(1), result.getInt(2));
+        pstmt.close();
+        RunReport.countQuery(counts.size(), 0);
+        return counts;
+    }
+
+    public void close() throws SQLException
+    {
+        conn.close();
+    }
+
+    public String toString()
+    {
+        return url != null ? url : "JDBC connection";
+    }
+
+    private List<String> strings(String query) throws SQLException
+    {
+        ArrayList<String> values = new ArrayList<String>();
+        PreparedStatement pstmt = conn.prepareStatement(query);
+        ResultSet result = pstmt.executeQuery();
+        while (result.next())
+            values.add(result.getString(1));
+        pstmt.close();
+        RunReport.countQuery(values.size(), 0);
+        return values;
+    }
+
+    private static void visit(PreparedStatement pstmt, PriceVisitor visitor) throws SQLException
+    {
+        ResultSet querySet = pstmt.executeQuery();
+        long rows = 0;
+        for (; querySet.next(); rows++)
+        {
+            visitor.row(querySet.getString(1), TransactionSeries.toEpochDay(querySet.getDate(2)),
+                    querySet.getDouble(3), querySet.getDouble(4));
+        }
+        RunReport.countQuery(rows, pstmt.getFetchSize());
+        pstmt.close();
+    }
+}//end class
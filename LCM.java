@@ -0,0 +1,244 @@
+/*
+ * LCM
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Closed itemset mining by prefix preserving closure extension (Uno et
+ * al.). Each closed itemset is generated exactly once from its parent, so
+ * no store of earlier results is needed to test closedness. Occurrences
+ * of all extensions are built in one pass ("occurrence deliver").
+ */
+
+import java.util.*;
+
+public class LCM implements ClosedItemsetMiner
+{
+    // Frequent items renumbered densely by ascending item id
+    int[] denseToItem;
+    int[][] db;
+    int minSupport;
+
+
+    public String getName()
+    {
+        return "LCM";
+    }
+
+    public List<Itemset> mine(List<int[]> transactions, int minSupport)
+    {
+        List<Itemset> results = new ArrayList<Itemset>();
+        int[] root = prepare(transactions, minSupport);
+        if (root != null)
+        {
+            int[] allTids = new int[db.length];
+            for (int t = 0; t < allTids.length; t++)
+                allTids[t] = t;
+
+            Scratch scratch = new Scratch(denseToItem.length);
+            if (root.length > 0)
+                results.add(toItemset(root, db.length));
+            expand(root, allTids, -1, scratch, results);
+        }
+
+        results.sort(Itemset.CANONICAL);
+        return results;
+    }
+
+    // Build the dense database, returns the closure of the empty set or null if nothing is frequent
+    int[] prepare(List<int[]> transactions, int minSupport)
+    {
+        this.minSupport = minSupport;
+        int[][] normalized = ClosedItemsetMiner.normalize(transactions);
+
+        TreeMap<Integer, Integer> supports = new TreeMap<Integer, Integer>();
+        for (int[] transaction : normalized)
+        {
+            for (int item : transaction)
+                supports.merge(item, 1, Integer::sum);
+        }
+
+        HashMap<Integer, Integer> itemToDense = new HashMap<Integer, Integer>();
+        List<Integer> frequent = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Integer> e : supports.entrySet())
+        {
+            if (e.getValue() >= minSupport)
+            {
+                itemToDense.put(e.getKey(), frequent.size());
+                frequent.add(e.getKey());
+            }
+        }
+
+        denseToItem = new int[frequent.size()];
+        for (int i = 0; i < denseToItem.length; i++)
+            denseToItem[i] = frequent.get(i);
+
+        db = new int[normalized.length][];
+        int[] buffer = new int[denseToItem.length];
+        for (int t = 0; t < normalized.length; t++)
+        {
+            int n = 0;
+            for (int item : normalized[t])
+            {
+                Integer dense = itemToDense.get(item);
+                if (dense != null)
+                    buffer[n++] = dense;
+            }
+            db[t] = Arrays.copyOf(buffer, n);
+        }
+
+        if (db.length < minSupport || denseToItem.length == 0)
+            return null;
+
+        int[] counts = new int[denseToItem.length];
+        for (int[] transaction : db)
+        {
+            for (int item : transaction)
+                counts[item]++;
+        }
+        int n = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] == db.length)
+                buffer[n++] = i;
+        }
+        return Arrays.copyOf(buffer, n);
+    }
+
+    // Enumerate the ppc-extensions of the closed itemset p occurring in occ
+    void expand(int[] p, int[] occ, int core, Scratch scratch, List<Itemset> out)
+    {
+        int[][] buckets = deliver(occ, core, scratch);
+        for (int e = core + 1; e < buckets.length; e++)
+        {
+            int[] occE = buckets[e];
+            if (occE == null)
+                continue;
+
+            int[] q = closureIfPrefixPreserved(p, occE, e, scratch);
+            if (q == null)
+                continue;
+
+            out.add(toItemset(q, occE.length));
+            expand(q, occE, e, scratch, out);
+        }
+    }
+
+    // Occurrences of every frequent extension item greater than core, null where infrequent
+    int[][] deliver(int[] occ, int core, Scratch scratch)
+    {
+        int[] counts = scratch.counts;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        for (int tid : occ)
+        {
+            int[] transaction = db[tid];
+            for (int i = firstAbove(transaction, core); i < transaction.length; i++)
+            {
+                int item = transaction[i];
+                if (counts[item]++ == 0)
+                    touched[touchedCount++] = item;
+            }
+        }
+
+        int[][] buckets = new int[denseToItem.length][];
+        for (int i = 0; i < touchedCount; i++)
+        {
+            int item = touched[i];
+            // items in every occurrence already belong to the closed prefix
+            if (counts[item] >= minSupport && counts[item] < occ.length)
+                buckets[item] = new int[counts[item]];
+            counts[item] = 0;
+        }
+
+        for (int tid : occ)
+        {
+            int[] transaction = db[tid];
+            for (int i = firstAbove(transaction, core); i < transaction.length; i++)
+            {
+                int item = transaction[i];
+                int[] bucket = buckets[item];
+                if (bucket != null)
+                    bucket[counts[item]++] = tid;
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++)
+            counts[touched[i]] = 0;
+
+        return buckets;
+    }
+
+    // Closure of p + e over occE, or null if it adds an item smaller than e
+    int[] closureIfPrefixPreserved(int[] p, int[] occE, int e, Scratch scratch)
+    {
+        int[] counts = scratch.counts;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        for (int tid : occE)
+        {
+            for (int item : db[tid])
+            {
+                if (counts[item]++ == 0)
+                    touched[touchedCount++] = item;
+            }
+        }
+
+        int n = 0;
+        boolean preserved = true;
+        int[] closure = scratch.closure;
+        for (int i = 0; i < touchedCount; i++)
+        {
+            int item = touched[i];
+            if (counts[item] == occE.length)
+            {
+                closure[n++] = item;
+                if (item < e && Arrays.binarySearch(p, item) < 0)
+                    preserved = false;
+            }
+            counts[item] = 0;
+        }
+
+        if (!preserved)
+            return null;
+
+        int[] q = Arrays.copyOf(closure, n);
+        Arrays.sort(q);
+        return q;
+    }
+
+    Itemset toItemset(int[] dense, int support)
+    {
+        int[] items = new int[dense.length];
+        for (int i = 0; i < dense.length; i++)
+            items[i] = denseToItem[dense[i]];
+        return new Itemset(items, support);
+    }
+
+    private static int firstAbove(int[] sorted, int core)
+    {
+        if (core < 0)
+            return 0;
+        int i = Arrays.binarySearch(sorted, core + 1);
+        return i >= 0 ? i : -i - 1;
+    }
+
+
+    // Per thread working arrays, always left zeroed between calls
+    static final class Scratch
+    {
+        final int[] counts;
+        final int[] touched;
+        final int[] closure;
+
+        Scratch(int items)
+        {
+            counts = new int[items];
+            touched = new int[items];
+            closure = new int[items];
+        }
+    }
+}//end class
@@ -0,0 +1,143 @@
+/*
+ * LaggedTransactions
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Lead/lag transactions: the transaction of day d holds every entity that
+ * was increasing or decreasing on day d - lag, for lag 0..maxLag, as an
+ * item tagged with both its lag and its direction. An itemset such as
+ * {A up, B up 2 days earlier} then says B rising leads A rising by two
+ * days. There is still one transaction per day, built from a ring of the
+ * last maxLag + 1 days, each day's situations read from the series once.
+ *
+ * An itemset without a lag 0 item is the same pattern as one found on a
+ * later day, shifted, so anchored() drops those after mining.
+ */
+
+import java.util.*;
+
+public class LaggedTransactions
+{
+    private final int maxLag;
+    // item ids per lag, one past the largest entity id
+    private final int stride;
+
+
+    public LaggedTransactions(int maxLag, int maxId)
+    {
+        if (maxLag < 0)
+            throw new IllegalArgumentException("Lag must not be negative, got " + maxLag);
+        if ((long) (maxLag + 1) * (maxId + 1) * 2 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many lagged items for " + (maxId + 1) + " ids and lag " + maxLag);
+        this.maxLag = maxLag;
+        this.stride = maxId + 1;
+    }
+
+    public int getMaxLag()
+    {
+        return maxLag;
+    }
+
+    // Item of an entity at a lag; items sort by lag, then entity, then direction
+    public int item(int id, int lag, boolean decreasing)
+    {
+        return (lag * stride + id) * 2 + (decreasing ? 1 : 0);
+    }
+
+    public int id(int item)
+    {
+        return (item >>> 1) % stride;
+    }
+
+    public int lag(int item)
+    {
+        return (item >>> 1) / stride;
+    }
+
+    public boolean isDecreasing(int item)
+    {
+        return (item & 1) != 0;
+    }
+
+    // e.g. "AAPL up" or "MSFT down 2 days earlier"
+    public String describe(int item, Map<Integer, String> names)
+    {
+        int lag = lag(item);
+        String name = names.get(id(item)) + (isDecreasing(item) ? " down" : " up");
+        if (lag == 0)
+            return name;
+        return name + " " + lag + (lag == 1 ? " day" : " days") + " earlier";
+    }
+
+    // Feed one transaction per day, from day maxLag on, to the sink; series must be aligned and classified
+    public long build(Collection<TransactionSeries> allSeries, TransactionSink sink)
+    {
+        ArrayList<TransactionSeries> series = new ArrayList<TransactionSeries>();
+        int days = Integer.MAX_VALUE;
+        for (TransactionSeries s : allSeries)
+        {
+            if (s != null && s.size > 0)
+            {
+                series.add(s);
+                days = Math.min(days, s.size);
+            }
+        }
+        if (series.isEmpty())
+            return 0;
+
+        // situations of the last maxLag + 1 days as lag 0 items, ring[d % (maxLag + 1)] for day d
+        int[][] ring = new int[maxLag + 1][series.size()];
+        int[] ringSize = new int[maxLag + 1];
+        int[] transaction = new int[(maxLag + 1) * series.size()];
+        long transactions = 0;
+
+        for (int day = 0; day < days; day++)
+        {
+            int slot = day % (maxLag + 1);
+            int n = 0;
+            for (TransactionSeries s : series)
+            {
+                byte situation = s.situation[day];
+                if (situation == TransactionSeries.INCREASING)
+                    ring[slot][n++] = item(s.id, 0, false);
+                else if (situation == TransactionSeries.DECREASING)
+                    ring[slot][n++] = item(s.id, 0, true);
+            }
+            Arrays.sort(ring[slot], 0, n);
+            ringSize[slot] = n;
+
+            if (day < maxLag)
+                continue;
+
+            int length = 0;
+            for (int lag = 0; lag <= maxLag; lag++)
+            {
+                int from = (day - lag) % (maxLag + 1);
+                int offset = lag * stride * 2;
+                for (int i = 0; i < ringSize[from]; i++)
+                    transaction[length++] = ring[from][i] + offset;
+            }
+            if (length > 0)
+            {
+                sink.accept(transaction, length);
+                transactions++;
+            }
+        }
+        return transactions;
+    }
+
+    // Keep the itemsets with a lag 0 item, the rest repeat them shifted
+    public List<Itemset> anchored(List<Itemset> itemsets)
+    {
+        ArrayList<Itemset> kept = new ArrayList<Itemset>();
+        for (Itemset itemset : itemsets)
+        {
+            // items are sorted and lag 0 items come first
+            if (itemset.size() > 0 && lag(itemset.items[0]) == 0)
+                kept.add(itemset);
+        }
+        return kept;
+    }
+}//end class
@@ -0,0 +1,72 @@
+/*
+ * MiningConfig
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Typed access to the analysis settings kept in readerparams.txt next to
+ * the database credentials. Missing keys fall back to the given default.
+ */
+
+import java.util.Properties;
+
+public class MiningConfig
+{
+    private final Properties props;
+
+
+    public MiningConfig(Properties props)
+    {
+        this.props = props;
+    }
+
+    public Properties getProperties()
+    {
+        return props;
+    }
+
+    public String getString(String key, String defaultValue)
+    {
+        String value = props.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue)
+    {
+        String value = getString(key, null);
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Setting " + key + " is not an integer: " + value);
+        }
+    }
+
+    public double getDouble(String key, double defaultValue)
+    {
+        String value = getString(key, null);
+        if (value == null)
+            return defaultValue;
+
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Setting " + key + " is not a number: " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue)
+    {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}//end class
@@ -0,0 +1,177 @@
+/*
+ * MiningLog
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Leveled console/file output for the drivers. Until configure() is
+ * called lines go straight to System.out; after it they are handed to a
+ * background thread through a bounded queue and written in large buffered
+ * chunks, so the analysis never waits on the console unless the queue is
+ * full. Callers guard anything costly to build with isEnabled().
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class MiningLog
+{
+    public enum Level
+    {
+        ERROR, WARN, INFO, DEBUG;
+
+        public static Level fromName(String name)
+        {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private static volatile Level level = Level.INFO;
+    private static AsyncWriter writer;
+
+
+    // file may be empty for System.out; queueLines bounds the lines waiting to be written
+    public static synchronized void configure(Level newLevel, String file, int queueLines) throws IOException
+    {
+        close();
+        level = newLevel;
+        Writer out = file == null || file.isEmpty()
+                ? new OutputStreamWriter(new FileOutputStream(FileDescriptor.out))
+                : new FileWriter(file);
+        writer = new AsyncWriter(new BufferedWriter(out, 1 << 16), Math.max(1, queueLines), file != null && !file.isEmpty());
+    }
+
+    public static boolean isEnabled(Level l)
+    {
+        return l.ordinal() <= level.ordinal();
+    }
+
+    public static void error(String line)
+    {
+        log(Level.ERROR, "ERROR: " + line);
+    }
+
+    public static void warn(String line)
+    {
+        log(Level.WARN, "WARN: " + line);
+    }
+
+    public static void info(String line)
+    {
+        log(Level.INFO, line);
+    }
+
+    public static void debug(String line)
+    {
+        log(Level.DEBUG, line);
+    }
+
+    private static void log(Level l, String line)
+    {
+        if (!isEnabled(l))
+            return;
+        AsyncWriter w = writer;
+        if (w == null)
+            System.out.println(line);
+        else
+            w.write(line);
+    }
+
+    // Write out everything queued and stop the writer thread
+    public static synchronized void close()
+    {
+        if (writer != null)
+        {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private static class AsyncWriter implements Runnable
+    {
+        // queued after the last line to stop the thread
+        private static final String END = new String("end");
+
+        private final BlockingQueue<String> queue;
+        private final Writer out;
+        private final boolean closeAtEnd;
+        private final Thread thread;
+
+
+        AsyncWriter(Writer out, int capacity, boolean closeAtEnd)
+        {
+            this.out = out;
+            this.closeAtEnd = closeAtEnd;
+            queue = new ArrayBlockingQueue<String>(capacity);
+            thread = new Thread(this, "mining-log");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Blocks only while the queue is full
+        void write(String line)
+        {
+            try
+            {
+                queue.put(line);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void run()
+        {
+            ArrayList<String> batch = new ArrayList<String>();
+            try
+            {
+                while (true)
+                {
+                    batch.add(queue.take());
+                    queue.drainTo(batch);
+                    for (String line : batch)
+                    {
+                        if (line == END)
+                        {
+                            if (closeAtEnd)
+                                out.close();
+                            else
+                                out.flush();
+                            return;
+                        }
+                        out.write(line);
+                        out.write(System.lineSeparator());
+                    }
+                    batch.clear();
+                    // flush once the queue runs dry so output keeps up with a slow run
+                    if (queue.isEmpty())
+                        out.flush();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Log output failed: " + e.getMessage());
+            }
+        }
+
+        void close()
+        {
+            write(END);
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}//end class
@@ -0,0 +1,132 @@
+/*
+ * MiningRun
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Runs a ClosedItemsetMiner and records what the run cost: wall time,
+ * bytes allocated by the mining thread and by any worker threads the
+ * miner starts, and peak heap while it ran.
+ *
+ * Peak heap is process wide. The JVM keeps one peak per heap pool, so it
+ * is only reset when no other run or report phase is measuring; a run
+ * that overlaps others reports the peak since the earliest of them began.
+ */
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+public class MiningRun
+{
+    public String miner;
+    public int transactions;
+    public int minSupport;
+    public List<Itemset> itemsets;
+    public long millis;
+    public long allocatedBytes = -1;
+    public long peakHeapBytes;
+
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<MemoryPoolMXBean>();
+    private static final Object PEAK_LOCK = new Object();
+    private static int measuring;
+
+    static
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                HEAP_POOLS.add(pool);
+        }
+    }
+
+
+    public static MiningRun run(final ClosedItemsetMiner miner, final List<int[]> transactions, final int minSupport)
+    {
+        MiningRun run = run(miner.getName(), transactions.size(), minSupport, () -> miner.mine(transactions, minSupport));
+        if (run.allocatedBytes >= 0)
+            run.allocatedBytes += miner.workerAllocatedBytes();
+        return run;
+    }
+
+    // CHARM straight on the item bitmaps
+    public static MiningRun run(final VerticalDatabase vertical, final int minSupport)
+    {
+        return run("CHARM (vertical)", vertical.transactionCount, minSupport, () -> new Charm().mine(vertical, minSupport));
+    }
+
+    public static MiningRun run(String miner, int transactions, int minSupport, Supplier<List<Itemset>> mining)
+    {
+        MiningRun run = new MiningRun();
+        run.miner = miner;
+        run.transactions = transactions;
+        run.minSupport = minSupport;
+
+        beginPeakHeap();
+        try
+        {
+            long allocatedBefore = threadAllocatedBytes();
+            long start = System.nanoTime();
+
+            run.itemsets = mining.get();
+
+            run.millis = (System.nanoTime() - start) / 1000000L;
+            long allocatedAfter = threadAllocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0)
+                run.allocatedBytes = allocatedAfter - allocatedBefore;
+        }
+        finally
+        {
+            run.peakHeapBytes = endPeakHeap();
+        }
+        return run;
+    }
+
+    public String summary()
+    {
+        return String.format("%s found %d closed itemsets in %d transactions (min support %d) in %d ms, "
+                + "%.1f MB allocated, %.1f MB peak heap",
+                miner, itemsets.size(), transactions, minSupport, millis,
+                allocatedBytes / 1048576.0d, peakHeapBytes / 1048576.0d);
+    }
+
+    // Start measuring peak heap, resetting the pools only if nothing else is measuring
+    static void beginPeakHeap()
+    {
+        synchronized (PEAK_LOCK)
+        {
+            if (measuring++ == 0)
+            {
+                for (MemoryPoolMXBean pool : HEAP_POOLS)
+                    pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Peak heap of the process since the earliest measurement still running began
+    static long endPeakHeap()
+    {
+        synchronized (PEAK_LOCK)
+        {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : HEAP_POOLS)
+                peak += pool.getPeakUsage().getUsed();
+            measuring = Math.max(0, measuring - 1);
+            return peak;
+        }
+    }
+
+    // Bytes allocated by the current thread, -1 where the JVM does not track it
+    static long threadAllocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}//end class
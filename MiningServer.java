@@ -0,0 +1,231 @@
+/*
+ * MiningServer
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Keeps the loaded price history resident and mines it on request over
+ * local HTTP, so trying another window, threshold or support level costs
+ * a mining run instead of a full reload:
+ *
+ *   java MiningServer [company|industry]
+ *   GET /mine?window=20&type=ema&increase=1.3&decrease=0.7&minSupport=5%&limit=20
+ *   GET /status
+ *   POST /reload
+ *
+ * Every /mine parameter is optional and defaults to readerparams.txt:
+ * window, type, increase, decrease, classifier, minSupport, miner,
+ * threads, align and limit. The loaded dates and capital are one
+ * immutable PriceHistory that all requests read at once and never copy;
+ * a request only allocates its moving averages and the day bitmasks of
+ * its classification. /reload swaps in a new PriceHistory while running
+ * requests finish on the old one. Requests are served on virtual threads
+ * when the JVM has them (serverExecutor=virtual), at most serverMaxMining
+ * of them mine at the same time and none uses more than serverMaxMining
+ * threads.
+ */
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MiningServer
+{
+    private final MiningConfig config;
+    private final String analysis;
+    private final Semaphore mining;
+    private final int maxMining;
+    private final AtomicLong served = new AtomicLong();
+    private volatile PriceHistory dataset;
+
+
+    public MiningServer(MiningConfig config, String analysis)
+    {
+        if (!analysis.equals("company") && !analysis.equals("industry"))
+            throw new IllegalArgumentException("Unknown analysis: " + analysis);
+        this.config = config;
+        this.analysis = analysis;
+        maxMining = Math.max(1, config.getInt("serverMaxMining", Runtime.getRuntime().availableProcessors()));
+        mining = new Semaphore(maxMining);
+    }
+
+    public static void main(String [] args) throws Exception
+    {
+        Properties readProps = new Properties();
+        readProps.load(new FileInputStream("readerparams.txt"));
+        MiningConfig config = new MiningConfig(readProps);
+
+        MiningServer server = new MiningServer(config, args.length > 0 ? args[0] : "company");
+        server.reload();
+
+        InetSocketAddress address = new InetSocketAddress(config.getString("serverHost", "127.0.0.1"),
+                config.getInt("serverPort", 8477));
+        HttpServer http = HttpServer.create(address, 0);
+        http.createContext("/mine", exchange -> server.handle(exchange, () -> server.mine(query(exchange))));
+        http.createContext("/status", exchange -> server.handle(exchange, server::status));
+        http.createContext("/reload", exchange -> server.handle(exchange, () ->
+        {
+            if (!exchange.getRequestMethod().equals("POST"))
+                throw new IllegalArgumentException("Use POST to reload");
+            server.reload();
+            return server.status();
+        }));
+        http.setExecutor(ParallelLoader.newExecutor(config.getString("serverExecutor", "virtual"),
+                config.getInt("serverThreads", 8)));
+        http.start();
+        MiningLog.info("Serving " + server.analysis + " analysis on http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    // Load everything again and swap it in, requests already running keep the old data
+    public synchronized void reload() throws Exception
+    {
+        dataset = PriceHistory.load(config, analysis);
+        MiningLog.info("Loaded " + dataset.rows + " rows of " + dataset.names.length + " series in " + dataset.loadMillis + " ms");
+    }
+
+    // One mining run over the resident data with the request's parameters
+    String mine(Map<String, String> params) throws Exception
+    {
+        PriceHistory data = dataset;
+        String type = param(params, "type", config.getString("movingAverageType", "sma"));
+        int window = Integer.parseInt(param(params, "window", config.getString("movingAverageWindow", "10")));
+        SituationClassifier classifier = new SituationClassifier(
+                Double.parseDouble(param(params, "increase", config.getString("increaseThreshold", "1.25"))),
+                Double.parseDouble(param(params, "decrease", config.getString("decreaseThreshold", "0.75"))),
+                param(params, "classifier", config.getString("classifier", "auto")));
+        String minSupport = param(params, "minSupport", config.getString("minSupport", "10%"));
+        String miner = param(params, "miner", config.getString("miner", "fpclose"));
+        // one request never runs more mining threads than the server mines with in total
+        int threads = Math.max(1, Math.min(maxMining, Integer.parseInt(param(params, "threads", "1"))));
+        SeriesAligner.Policy policy = SeriesAligner.Policy.fromName(param(params, "align", config.getString("alignPolicy", "intersection")));
+        int limit = Integer.parseInt(param(params, "limit", config.getString("summaryItemsets", "20")));
+        // a bad type or window is rejected before waiting for a mining slot
+        MovingAverage.create(type, window);
+
+        mining.acquire();
+        try
+        {
+            long start = System.nanoTime();
+
+            // this request's moving averages, read with the shared columns through the cached rows
+            PriceHistory.Alignment alignment = data.align(window, policy);
+            double[][] averages = new double[alignment.members.length][];
+            for (int m = 0; m < averages.length; m++)
+                averages[m] = data.averages(alignment.members[m], type, window);
+            PriceHistory.Situations situations = data.classify(alignment, averages, classifier);
+            int days = alignment.days();
+
+            MiningRun run;
+            if (miner.equals("vertical"))
+            {
+                VerticalDatabase vertical = situations.vertical();
+                run = MiningRun.run(vertical, ClosedItemsetMiner.minSupportCount(minSupport, vertical.transactionCount));
+            }
+            else
+            {
+                List<int[]> transactions = situations.transactions();
+                run = MiningRun.run(ClosedItemsetMiner.create(miner, threads), transactions,
+                        ClosedItemsetMiner.minSupportCount(minSupport, transactions.size()));
+            }
+            long millis = (System.nanoTime() - start) / 1000000L;
+
+            StringBuilder json = new StringBuilder();
+            json.append("{\"analysis\": \"").append(data.analysis).append("\", \"window\": ").append(window)
+                    .append(", \"type\": \"").append(escape(type)).append("\", \"days\": ").append(days)
+                    .append(", \"transactions\": ").append(run.transactions)
+                    .append(", \"minSupport\": ").append(run.minSupport)
+                    .append(", \"itemsets\": ").append(run.itemsets.size())
+                    .append(", \"millis\": ").append(millis).append(", \"top\": [");
+            int shown = 0;
+            for (Itemset itemset : run.itemsets)
+            {
+                if (itemset.size() < 2 || shown >= limit)
+                    continue;
+                json.append(shown++ > 0 ? ", " : "").append("{\"items\": [");
+                for (int i = 0; i < itemset.size(); i++)
+                    json.append(i > 0 ? ", " : "").append('"').append(escape(data.dictionary.get(itemset.items[i]))).append('"');
+                json.append("], \"support\": ").append(itemset.support).append('}');
+            }
+            return json.append("]}").toString();
+        }
+        finally
+        {
+            mining.release();
+        }
+    }
+
+    String status()
+    {
+        PriceHistory data = dataset;
+        return "{\"analysis\": \"" + data.analysis + "\", \"series\": " + data.names.length + ", \"rows\": " + data.rows
+                + ", \"loadMillis\": " + data.loadMillis + ", \"loadedAt\": " + data.loadedAt
+                + ", \"requests\": " + served.get() + ", \"miningSlotsFree\": " + mining.availablePermits() + "}";
+    }
+
+    interface Handler
+    {
+        String run() throws Exception;
+    }
+
+    // JSON answer, bad parameters are a 400 and anything else a 500
+    private void handle(HttpExchange exchange, Handler handler) throws IOException
+    {
+        int code = 200;
+        String body;
+        try
+        {
+            body = handler.run();
+            served.incrementAndGet();
+        }
+        catch (IllegalArgumentException e)
+        {
+            code = 400;
+            body = "{\"error\": \"" + escape(e.getMessage()) + "\"}";
+        }
+        catch (Exception e)
+        {
+            code = 500;
+            body = "{\"error\": \"" + escape(String.valueOf(e)) + "\"}";
+            MiningLog.error("Request " + exchange.getRequestURI() + " failed: " + e);
+        }
+
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws UnsupportedEncodingException
+    {
+        HashMap<String, String> params = new HashMap<String, String>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static String param(Map<String, String> params, String key, String defaultValue)
+    {
+        String value = params.get(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static String escape(String text)
+    {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}//end class
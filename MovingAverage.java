@@ -0,0 +1,307 @@
+/*
+ * MovingAverage
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Sliding window averages over a stream of daily capital values. Every
+ * variant costs O(1) per value regardless of the window size: the simple
+ * and weighted averages keep a primitive ring buffer with Kahan
+ * compensated running sums, the exponential average only keeps its state.
+ * That state can be written out and read back, so a later run continues a
+ * series exactly where an earlier one stopped.
+ */
+
+import java.io.*;
+
+public abstract class MovingAverage
+{
+    // Returned by add() until a full window has been seen
+    public static final double NOT_READY = -1.0d;
+
+    protected final int window;
+    protected int count;
+
+
+    protected MovingAverage(int window)
+    {
+        if (window < 1)
+            throw new IllegalArgumentException("Moving average window must be at least 1, got " + window);
+        this.window = window;
+    }
+
+    // Build a moving average from its configured name: sma, ema or wma
+    public static MovingAverage create(String type, int window)
+    {
+        switch (type.trim().toLowerCase())
+        {
+            case "sma":
+            case "simple":
+                return new Simple(window);
+            case "ema":
+            case "exponential":
+                return new Exponential(window);
+            case "wma":
+            case "weighted":
+                return new Weighted(window);
+            default:
+                throw new IllegalArgumentException("Unknown moving average type: " + type);
+        }
+    }
+
+    // Push the next value, returns the average for this day or NOT_READY
+    public abstract double add(double value);
+
+    // Everything add() depends on, for read() on an average of the same type and window
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt(window);
+        out.writeInt(count);
+    }
+
+    public void read(DataInput in) throws IOException
+    {
+        int savedWindow = in.readInt();
+        if (savedWindow != window)
+            throw new IOException("Saved moving average has a window of " + savedWindow + ", expected " + window);
+        count = in.readInt();
+    }
+
+    public void reset()
+    {
+        count = 0;
+    }
+
+    public boolean isReady()
+    {
+        return count >= window;
+    }
+
+    public int getWindow()
+    {
+        return window;
+    }
+
+    // Values seen since the last reset
+    public int getCount()
+    {
+        return count;
+    }
+
+
+    // Running sum with Kahan compensation, values may be added or removed
+    static final class KahanSum
+    {
+        double sum;
+        double compensation;
+
+        void add(double value)
+        {
+            double y = value - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+        }
+
+        void reset()
+        {
+            sum = 0.0d;
+            compensation = 0.0d;
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            out.writeDouble(sum);
+            out.writeDouble(compensation);
+        }
+
+        void read(DataInput in) throws IOException
+        {
+            sum = in.readDouble();
+            compensation = in.readDouble();
+        }
+    }
+
+    static void writeRing(DataOutput out, double[] ring, int head) throws IOException
+    {
+        out.writeInt(head);
+        for (double value : ring)
+            out.writeDouble(value);
+    }
+
+    static int readRing(DataInput in, double[] ring) throws IOException
+    {
+        int head = in.readInt();
+        for (int i = 0; i < ring.length; i++)
+            ring[i] = in.readDouble();
+        return head;
+    }
+
+
+    // Arithmetic mean of the last window values
+    public static class Simple extends MovingAverage
+    {
+        private final double[] ring;
+        private final KahanSum sum = new KahanSum();
+        private int head;
+
+        public Simple(int window)
+        {
+            super(window);
+            ring = new double[window];
+        }
+
+        public double add(double value)
+        {
+            if (count >= window)
+                sum.add(-ring[head]);
+            else
+                count++;
+
+            ring[head] = value;
+            sum.add(value);
+            head = (head + 1) % window;
+
+            return count >= window ? sum.sum / window : NOT_READY;
+        }
+
+        public void reset()
+        {
+            super.reset();
+            sum.reset();
+            head = 0;
+        }
+
+        public void write(DataOutput out) throws IOException
+        {
+            super.write(out);
+            sum.write(out);
+            writeRing(out, ring, head);
+        }
+
+        public void read(DataInput in) throws IOException
+        {
+            super.read(in);
+            sum.read(in);
+            head = readRing(in, ring);
+        }
+    }
+
+
+    // Exponential average with alpha = 2 / (window + 1), seeded by the mean of the first window
+    public static class Exponential extends MovingAverage
+    {
+        private final double alpha;
+        private final KahanSum seed = new KahanSum();
+        private double average;
+
+        public Exponential(int window)
+        {
+            super(window);
+            alpha = 2.0d / (window + 1);
+        }
+
+        public double add(double value)
+        {
+            if (count < window)
+            {
+                seed.add(value);
+                count++;
+                if (count < window)
+                    return NOT_READY;
+
+                average = seed.sum / window;
+                return average;
+            }
+
+            average += alpha * (value - average);
+            return average;
+        }
+
+        public void reset()
+        {
+            super.reset();
+            seed.reset();
+            average = 0.0d;
+        }
+
+        public void write(DataOutput out) throws IOException
+        {
+            super.write(out);
+            seed.write(out);
+            out.writeDouble(average);
+        }
+
+        public void read(DataInput in) throws IOException
+        {
+            super.read(in);
+            seed.read(in);
+            average = in.readDouble();
+        }
+    }
+
+
+    // Linearly weighted average, the newest day weighs window and the oldest weighs 1
+    public static class Weighted extends MovingAverage
+    {
+        private final double[] ring;
+        private final double divisor;
+        private final KahanSum sum = new KahanSum();
+        private final KahanSum weightedSum = new KahanSum();
+        private int head;
+
+        public Weighted(int window)
+        {
+            super(window);
+            ring = new double[window];
+            divisor = window * (window + 1) / 2.0d;
+        }
+
+        public double add(double value)
+        {
+            if (count >= window)
+            {
+                // every value loses one unit of weight, the oldest drops out
+                weightedSum.add(-sum.sum);
+                weightedSum.add(window * value);
+                sum.add(-ring[head]);
+            }
+            else
+            {
+                count++;
+                weightedSum.add(count * value);
+            }
+
+            ring[head] = value;
+            sum.add(value);
+            head = (head + 1) % window;
+
+            return count >= window ? weightedSum.sum / divisor : NOT_READY;
+        }
+
+        public void reset()
+        {
+            super.reset();
+            sum.reset();
+            weightedSum.reset();
+            head = 0;
+        }
+
+        public void write(DataOutput out) throws IOException
+        {
+            super.write(out);
+            sum.write(out);
+            weightedSum.write(out);
+            writeRing(out, ring, head);
+        }
+
+        public void read(DataInput in) throws IOException
+        {
+            super.read(in);
+            sum.read(in);
+            weightedSum.read(in);
+            head = readRing(in, ring);
+        }
+    }
+}//end class
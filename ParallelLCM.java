@@ -0,0 +1,153 @@
+/*
+ * ParallelLCM
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * LCM split across a ForkJoinPool by frequent item prefix. Every prefix
+ * extension owns its conditional (projected) database, the transactions
+ * that contain it, so subtrees share nothing but the read only database
+ * and can be mined by any worker. Large projections are forked and idle
+ * workers steal them, which keeps skewed prefixes from serializing the
+ * run. Results are merged, deduplicated and sorted, so they are the same
+ * as a serial LCM or FPClose run.
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelLCM extends LCM
+{
+    // Projections with fewer transactions than this are mined inline
+    private static final int FORK_THRESHOLD = 64;
+
+    private final int threads;
+    private volatile long workerAllocatedBytes;
+
+
+    // threads <= 0 uses every available core
+    public ParallelLCM(int threads)
+    {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public String getName()
+    {
+        return "ParallelLCM(" + threads + ")";
+    }
+
+    public long workerAllocatedBytes()
+    {
+        return workerAllocatedBytes;
+    }
+
+    public List<Itemset> mine(List<int[]> transactions, int minSupport)
+    {
+        workerAllocatedBytes = 0;
+        int[] root = prepare(transactions, minSupport);
+        if (root == null)
+            return new ArrayList<Itemset>();
+
+        int[] allTids = new int[db.length];
+        for (int t = 0; t < allTids.length; t++)
+            allTids[t] = t;
+
+        final int items = denseToItem.length;
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(items));
+
+        // workers add up what they allocated as they exit, the pool is only ours for this run
+        final AtomicLong allocated = new AtomicLong();
+        ForkJoinPool pool = new ForkJoinPool(threads, p -> new ForkJoinWorkerThread(p)
+        {
+            protected void onTermination(Throwable exception)
+            {
+                long bytes = MiningRun.threadAllocatedBytes();
+                if (bytes > 0)
+                    allocated.addAndGet(bytes);
+                super.onTermination(exception);
+            }
+        }, null, false);
+        List<Itemset> mined;
+        try
+        {
+            mined = pool.invoke(new ExpandTask(root, allTids, -1, scratch));
+        }
+        finally
+        {
+            pool.shutdown();
+            try
+            {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            workerAllocatedBytes = allocated.get();
+        }
+
+        if (root.length > 0)
+            mined.add(toItemset(root, db.length));
+
+        // ppc extension yields every closed itemset once, the set only guards the merge
+        List<Itemset> results = new ArrayList<Itemset>(new LinkedHashSet<Itemset>(mined));
+        results.sort(Itemset.CANONICAL);
+        return results;
+    }
+
+
+    private class ExpandTask extends RecursiveTask<List<Itemset>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] p;
+        private final int[] occ;
+        private final int core;
+        private final ThreadLocal<Scratch> scratch;
+
+        ExpandTask(int[] p, int[] occ, int core, ThreadLocal<Scratch> scratch)
+        {
+            this.p = p;
+            this.occ = occ;
+            this.core = core;
+            this.scratch = scratch;
+        }
+
+        protected List<Itemset> compute()
+        {
+            List<Itemset> out = new ArrayList<Itemset>();
+            List<ExpandTask> forked = new ArrayList<ExpandTask>();
+
+            Scratch local = scratch.get();
+            int[][] buckets = deliver(occ, core, local);
+            for (int e = core + 1; e < buckets.length; e++)
+            {
+                int[] occE = buckets[e];
+                if (occE == null)
+                    continue;
+
+                int[] q = closureIfPrefixPreserved(p, occE, e, local);
+                if (q == null)
+                    continue;
+
+                out.add(toItemset(q, occE.length));
+                if (occE.length >= FORK_THRESHOLD)
+                {
+                    ExpandTask task = new ExpandTask(q, occE, e, scratch);
+                    task.fork();
+                    forked.add(task);
+                }
+                else
+                {
+                    expand(q, occE, e, local, out);
+                }
+            }
+
+            for (ExpandTask task : forked)
+                out.addAll(task.join());
+            return out;
+        }
+    }
+}//end class
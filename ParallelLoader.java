@@ -0,0 +1,122 @@
+/*
+ * ParallelLoader
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Runs one load query per key (ticker or industry) concurrently, each on
+ * a connection borrowed from a ConnectionPool. Results are collected by
+ * key index and merged on the calling thread, so the returned map always
+ * follows the order of the keys no matter which query finishes first.
+ */
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ParallelLoader
+{
+    // One load query, run with a pooled connection
+    public interface Query<T>
+    {
+        T load(Connection conn, String key) throws SQLException, IOException;
+    }
+
+
+    private final ConnectionPool pool;
+    private final int threads;
+    private final String executorType;
+
+
+    // executorType is "fixed" or "virtual", virtual threads need Java 21 and fall back to fixed
+    public ParallelLoader(ConnectionPool pool, int threads, String executorType)
+    {
+        this.pool = pool;
+        this.threads = Math.max(1, threads);
+        this.executorType = executorType;
+    }
+
+    // Load every key, keys whose query returns null are left out of the result
+    public <T> LinkedHashMap<String, T> load(List<String> keys, final Query<T> query)
+    throws SQLException, IOException, InterruptedException
+    {
+        ExecutorService executor = newExecutor(executorType, threads);
+        List<Future<T>> futures = new ArrayList<Future<T>>(keys.size());
+
+        try
+        {
+            for (final String key : keys)
+            {
+                futures.add(executor.submit(new Callable<T>()
+                {
+                    public T call() throws Exception
+                    {
+                        Connection conn = pool.take();
+                        try
+                        {
+                            return query.load(conn, key);
+                        }
+                        finally
+                        {
+                            pool.release(conn);
+                        }
+                    }
+                }));
+            }
+
+            LinkedHashMap<String, T> results = new LinkedHashMap<String, T>();
+            for (int i = 0; i < keys.size(); i++)
+            {
+                T value = get(futures.get(i));
+                if (value != null)
+                    results.put(keys.get(i), value);
+            }
+            return results;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws SQLException, IOException, InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    // The tree builds on Java 17; virtual threads are final only from Java 21, so they are looked up
+    // reflectively and Java 17 to 20 fall back to platform threads
+    static ExecutorService newExecutor(String executorType, int threads)
+    {
+        if ("virtual".equals(executorType))
+        {
+            try
+            {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                MiningLog.warn("Virtual threads not available, using " + threads + " platform threads.");
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+}//end class
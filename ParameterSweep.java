@@ -0,0 +1,330 @@
+/*
+ * ParameterSweep
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Mines a grid of moving average windows, increase/decrease thresholds
+ * and minimum supports from one load of the data, and writes one report
+ * comparing every grid point:
+ *
+ *   java ParameterSweep [company|industry] [key=value ...]
+ *
+ *   sweepWindows     5,10,20 or first:last:step, e.g. 5:200:5
+ *   sweepThresholds  increase/decrease pairs, e.g. 1.25/0.75,1.5/0.5
+ *   sweepSupports    e.g. 2%,5%,10%
+ *   sweepThreads     windows evaluated at once, 0 for every core
+ *   sweepReport      csv report, default sweep.csv
+ *
+ * Other keys (movingAverageType, miner, classifier, alignPolicy) come
+ * from readerparams.txt as for CompanyMining. Key=value arguments
+ * override the file.
+ *
+ * The data is loaded once into a PriceHistory, which aligns it by row
+ * index and caches the intersection, so a window only cuts that calendar
+ * where some series has no full window yet, which gives exactly the days
+ * the batch run keeps. Simple
+ * averages come from compensated prefix sums built once, so a window
+ * costs O(n) however wide it is. Every window is one task. Within it each
+ * threshold pair is classified and mined once, at the lowest support of
+ * the grid. The higher supports are read off that result, because an
+ * itemset's closedness does not depend on the support threshold.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ParameterSweep
+{
+    public static class Result
+    {
+        public int window;
+        public double increase;
+        public double decrease;
+        public String minSupport;
+        public int minSupportCount;
+        public int days;
+        public int transactions;
+        public int itemsets;
+        public int multiItemsets;
+        public Itemset top;
+        public long millis;
+    }
+
+    private final PriceHistory data;
+    private final String movingAverageType;
+    private final String minerName;
+    private final String classifierKernel;
+    private final SeriesAligner.Policy policy;
+    private final boolean simple;
+    // prefix sums of capital as hi + lo pairs, so a window sum loses nothing to cancellation
+    private final double[][] prefixHi;
+    private final double[][] prefixLo;
+
+
+    public ParameterSweep(PriceHistory data, String movingAverageType, String minerName,
+                          String classifierKernel, SeriesAligner.Policy policy)
+    {
+        this.data = data;
+        this.movingAverageType = movingAverageType;
+        this.minerName = minerName;
+        this.classifierKernel = classifierKernel;
+        this.policy = policy;
+        simple = MovingAverage.create(movingAverageType, 1) instanceof MovingAverage.Simple;
+
+        int n = data.names.length;
+        prefixHi = new double[n][];
+        prefixLo = new double[n][];
+        for (int i = 0; simple && i < n; i++)
+        {
+            double[] capital = data.capital[i];
+            double[] hi = new double[capital.length + 1];
+            double[] lo = new double[capital.length + 1];
+            for (int r = 0; r < capital.length; r++)
+            {
+                // TwoSum: hi + lo is the exact running sum to double-double precision
+                double sum = hi[r] + capital[r];
+                double virtual = sum - hi[r];
+                double error = (hi[r] - (sum - virtual)) + (capital[r] - virtual);
+                hi[r + 1] = sum;
+                lo[r + 1] = lo[r] + error;
+            }
+            prefixHi[i] = hi;
+            prefixLo[i] = lo;
+        }
+    }
+
+    // Every grid point, in window, threshold, support order
+    public List<Result> run(int[] windows, final double[][] thresholds, final String[] supports, int threads)
+    throws InterruptedException, ExecutionException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        try
+        {
+            List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>();
+            for (final int window : windows)
+                futures.add(pool.submit(() -> sweepWindow(window, thresholds, supports)));
+
+            ArrayList<Result> results = new ArrayList<Result>();
+            for (Future<List<Result>> future : futures)
+                results.addAll(future.get());
+            return results;
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<Result> sweepWindow(int window, double[][] thresholds, String[] supports)
+    {
+        PriceHistory.Alignment alignment = data.align(window, policy);
+        double[][] averages = new double[alignment.members.length][];
+        for (int m = 0; m < averages.length; m++)
+            averages[m] = averages(alignment.members[m], window);
+        int days = alignment.days();
+        ArrayList<Result> results = new ArrayList<Result>();
+
+        for (double[] threshold : thresholds)
+        {
+            long start = System.nanoTime();
+            SituationClassifier classifier = new SituationClassifier(threshold[0], threshold[1], classifierKernel);
+            PriceHistory.Situations situations = data.classify(alignment, averages, classifier);
+
+            int transactions;
+            MiningRun run;
+            int[] counts = new int[supports.length];
+            if (minerName.equals("vertical"))
+            {
+                VerticalDatabase vertical = situations.vertical();
+                transactions = vertical.transactionCount;
+                run = MiningRun.run(vertical, lowest(supports, transactions, counts));
+            }
+            else
+            {
+                List<int[]> allItemsets = situations.transactions();
+                transactions = allItemsets.size();
+                run = MiningRun.run(ClosedItemsetMiner.create(minerName, 1), allItemsets, lowest(supports, transactions, counts));
+            }
+            long millis = (System.nanoTime() - start) / 1000000L;
+
+            for (int s = 0; s < supports.length; s++)
+            {
+                Result result = new Result();
+                result.window = window;
+                result.increase = threshold[0];
+                result.decrease = threshold[1];
+                result.minSupport = supports[s];
+                result.minSupportCount = counts[s];
+                result.days = days;
+                result.transactions = transactions;
+                result.millis = millis;
+                for (Itemset itemset : run.itemsets)
+                {
+                    if (itemset.support < counts[s])
+                        continue;
+                    result.itemsets++;
+                    if (itemset.size() > 1)
+                    {
+                        result.multiItemsets++;
+                        if (result.top == null || Itemset.CANONICAL.compare(itemset, result.top) < 0)
+                            result.top = itemset;
+                    }
+                }
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    // Support counts of the grid for this many transactions, returns the lowest
+    private static int lowest(String[] supports, int transactions, int[] counts)
+    {
+        int lowest = Integer.MAX_VALUE;
+        for (int s = 0; s < supports.length; s++)
+        {
+            counts[s] = ClosedItemsetMiner.minSupportCount(supports[s], transactions);
+            lowest = Math.min(lowest, counts[s]);
+        }
+        return lowest;
+    }
+
+    // The moving average of every row of one series, simple ones read off the prefix sums
+    private double[] averages(int series, int window)
+    {
+        if (!simple)
+            return data.averages(series, movingAverageType, window);
+
+        double[] hi = prefixHi[series];
+        double[] lo = prefixLo[series];
+        double[] averages = new double[hi.length - 1];
+        Arrays.fill(averages, 0, Math.min(window - 1, averages.length), MovingAverage.NOT_READY);
+        for (int r = window - 1; r < averages.length; r++)
+            averages[r] = ((hi[r + 1] - hi[r + 1 - window]) + (lo[r + 1] - lo[r + 1 - window])) / window;
+        return averages;
+    }
+
+
+    // "5,10,20" or "first:last:step"
+    static int[] parseWindows(String spec)
+    {
+        ArrayList<Integer> windows = new ArrayList<Integer>();
+        for (String part : spec.split(","))
+        {
+            String[] range = part.trim().split(":");
+            if (range.length == 1)
+            {
+                windows.add(Integer.parseInt(range[0]));
+                continue;
+            }
+            int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+            if (step < 1)
+                throw new IllegalArgumentException("Window step must be at least 1, got " + step);
+            for (int w = Integer.parseInt(range[0]); w <= Integer.parseInt(range[1]); w += step)
+                windows.add(w);
+        }
+        int[] result = new int[windows.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = windows.get(i);
+            if (result[i] < 1)
+                throw new IllegalArgumentException("Moving average window must be at least 1, got " + result[i]);
+        }
+        return result;
+    }
+
+    // "1.25/0.75,1.5/0.5"
+    static double[][] parseThresholds(String spec)
+    {
+        String[] pairs = spec.split(",");
+        double[][] thresholds = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; i++)
+        {
+            String[] pair = pairs[i].trim().split("/");
+            if (pair.length != 2)
+                throw new IllegalArgumentException("Expected increase/decrease, got " + pairs[i]);
+            thresholds[i] = new double[]{Double.parseDouble(pair[0]), Double.parseDouble(pair[1])};
+        }
+        return thresholds;
+    }
+
+    public static void writeCsv(List<Result> results, String type, Map<Integer, String> names, String file) throws IOException
+    {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try
+        {
+            writer.println("window,type,increase,decrease,minSupport,minSupportCount,days,transactions,"
+                    + "itemsets,multiItemsets,topItemset,topSupport,millis");
+            for (Result r : results)
+            {
+                writer.printf(Locale.ROOT, "%d,%s,%s,%s,%s,%d,%d,%d,%d,%d,%s,%d,%d%n",
+                        r.window, type, r.increase, r.decrease, r.minSupport, r.minSupportCount, r.days, r.transactions,
+                        r.itemsets, r.multiItemsets, AssociationRules.quoted(describe(r.top, names, ";")), r.top == null ? 0 : r.top.support, r.millis);
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static String describe(Itemset itemset, Map<Integer, String> names, String separator)
+    {
+        if (itemset == null)
+            return "";
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < itemset.size(); i++)
+        {
+            if (i > 0)
+                out.append(separator);
+            out.append(names.get(itemset.items[i]));
+        }
+        return out.toString();
+    }
+
+
+    public static void main(String [] args) throws Exception
+    {
+        String analysis = args.length > 0 && !args[0].contains("=") ? args[0] : "company";
+        Properties props = new Properties();
+        props.load(new FileInputStream("readerparams.txt"));
+        for (String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if (eq > 0)
+                props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        MiningConfig config = new MiningConfig(props);
+
+        int[] windows = parseWindows(config.getString("sweepWindows", "5,10,20,50"));
+        double[][] thresholds = parseThresholds(config.getString("sweepThresholds", "1.25/0.75"));
+        String[] supports = config.getString("sweepSupports", config.getString("minSupport", "10%")).split(",");
+        for (int s = 0; s < supports.length; s++)
+            supports[s] = supports[s].trim();
+        String type = config.getString("movingAverageType", "sma");
+        String report = config.getString("sweepReport", "sweep.csv");
+
+        PriceHistory data = PriceHistory.load(config, analysis);
+        System.out.println("Loaded " + data.rows + " rows of " + data.names.length + " series in " + data.loadMillis + " ms");
+
+        long start = System.currentTimeMillis();
+        ParameterSweep sweep = new ParameterSweep(data, type, config.getString("miner", "fpclose"),
+                config.getString("classifier", "auto"),
+                SeriesAligner.Policy.fromName(config.getString("alignPolicy", "intersection")));
+        List<Result> results = sweep.run(windows, thresholds, supports, config.getInt("sweepThreads", 0));
+        long millis = System.currentTimeMillis() - start;
+
+        System.out.printf("%7s %9s %9s %10s %7s %12s %10s %14s  %s%n",
+                "window", "increase", "decrease", "minSupport", "days", "transactions", "itemsets", "multi-itemsets", "strongest");
+        for (Result r : results)
+        {
+            System.out.printf(Locale.ROOT, "%7d %9.2f %9.2f %10s %7d %12d %10d %14d  %s%n",
+                    r.window, r.increase, r.decrease, r.minSupport, r.days, r.transactions, r.itemsets, r.multiItemsets,
+                    r.top == null ? "" : describe(r.top, data.dictionary, ", ") + " (" + r.top.support + ")");
+        }
+        writeCsv(results, type, data.dictionary, report);
+        System.out.println(results.size() + " grid points in " + millis + " ms, report written to " + report);
+    }
+}//end class
@@ -0,0 +1,66 @@
+/*
+ * PhaseEvent
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * JFR event for one finished RunReport phase, so phases show up next to
+ * GC and JDBC socket activity in a flight recording. Only loaded when
+ * jfrEvents=true; record with -XX:StartFlightRecording.
+ */
+
+import jdk.jfr.*;
+
+@Name("mining.Phase")
+@Label("Mining Phase")
+@Category("Data Mining")
+public class PhaseEvent extends Event
+{
+    @Label("Analysis")
+    String analysis;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Peak Heap")
+    @DataAmount
+    long peakHeapBytes;
+
+    @Label("JDBC Queries")
+    long jdbcQueries;
+
+    @Label("JDBC Rows")
+    long jdbcRows;
+
+
+    // Started when the phase begins so the event spans it
+    static PhaseEvent start()
+    {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(String analysis, RunReport.Phase phase)
+    {
+        end();
+        if (!shouldCommit())
+            return;
+        this.analysis = analysis;
+        this.phase = phase.name;
+        rows = phase.rows;
+        allocatedBytes = phase.allocatedBytes;
+        peakHeapBytes = phase.peakHeapBytes;
+        jdbcQueries = phase.jdbcQueries;
+        jdbcRows = phase.jdbcRows;
+        commit();
+    }
+}//end class
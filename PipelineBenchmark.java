@@ -0,0 +1,417 @@
+/*
+ * PipelineBenchmark
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Times each phase of the company analysis on SyntheticPriceVolume data:
+ * the moving average loop of the loaders, alignData, setupSituations,
+ * createItemSets, outputItemsets and translateOutput. Every phase gets
+ * fresh input outside the timed region, warmup iterations and measured
+ * iterations; the report gives time per operation, throughput, bytes
+ * allocated per operation, allocation rate and GC activity.
+ *
+ * Usage: java PipelineBenchmark [key=value ...]
+ *   tickers=500 days=1260 volatility=0.02 missingRate=0.01 seed=1
+ *   warmup=3 iterations=5 phases=all minSupport=5%
+ *   scale=tickers:100,200,400   one run per value, for scaling curves
+ *   csv=bench.csv               also append the results as csv
+ *
+ * outputItemsets writes data.dat in the working directory.
+ */
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+public class PipelineBenchmark
+{
+    // Results go here so the JIT cannot drop the work
+    static volatile Object blackhole;
+
+    private static PrintStream out = System.out;
+
+
+    public static void main(String [] args) throws Exception
+    {
+        Properties props = new Properties();
+        for (String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        MiningConfig config = new MiningConfig(props);
+
+        CompanyMining.movingAverageWindow = config.getInt("movingAverageWindow", CompanyMining.movingAverageWindow);
+        CompanyMining.movingAverageType = config.getString("movingAverageType", CompanyMining.movingAverageType);
+
+        PrintWriter csv = null;
+        String csvFile = config.getString("csv", null);
+        if (csvFile != null)
+        {
+            boolean header = !new File(csvFile).exists();
+            csv = new PrintWriter(new FileWriter(csvFile, true));
+            if (header)
+                csv.println("phase,tickers,days,volatility,missingRate,iterations,msPerOp,minMs,opsPerSec,mbPerOp,mbPerSec,gcCount,gcMs");
+        }
+
+        // scale=key:v1,v2,... repeats the whole run for every value of one parameter
+        String scale = config.getString("scale", null);
+        if (scale == null)
+        {
+            runAll(config, csv);
+        }
+        else
+        {
+            int colon = scale.indexOf(':');
+            String key = scale.substring(0, colon);
+            for (String value : scale.substring(colon + 1).split(","))
+            {
+                Properties point = new Properties();
+                point.putAll(props);
+                point.setProperty(key, value.trim());
+                runAll(new MiningConfig(point), csv);
+            }
+        }
+
+        if (csv != null)
+            csv.close();
+    }
+
+    private static void runAll(MiningConfig config, PrintWriter csv) throws Exception
+    {
+        SyntheticPriceVolume data = new SyntheticPriceVolume(
+                config.getInt("tickers", 500),
+                config.getInt("days", 1260),
+                config.getDouble("volatility", 0.02d),
+                config.getDouble("missingRate", 0.01d),
+                config.getInt("seed", 1));
+        int warmup = config.getInt("warmup", 3);
+        int iterations = config.getInt("iterations", 5);
+        String phases = config.getString("phases", "all");
+
+        out.printf("%n%d tickers x %d days, volatility %.3f, missing rate %.3f, %s(%d)%n",
+                data.tickers, data.days, data.volatility, data.missingRate,
+                CompanyMining.movingAverageType, CompanyMining.movingAverageWindow);
+        out.printf("%-16s %10s %10s %10s %10s %10s %6s %8s%n",
+                "phase", "ms/op", "min ms", "ops/s", "MB/op", "MB/s", "gc", "gc ms");
+
+        Fixture fixture = new Fixture(data, config.getString("minSupport", "5%"));
+        for (Phase phase : phases(fixture))
+        {
+            if (!phases.equals("all") && !Arrays.asList(phases.split(",")).contains(phase.name))
+                continue;
+            Result result = measure(phase, warmup, iterations);
+            out.printf("%-16s %10.3f %10.3f %10.1f %10.2f %10.1f %6d %8d%n",
+                    phase.name, result.meanMillis(), result.minMillis(), result.opsPerSecond(),
+                    result.megabytesPerOp(), result.megabytesPerSecond(), result.gcCount, result.gcMillis);
+            if (csv != null)
+            {
+                csv.printf(Locale.ROOT, "%s,%d,%d,%.4f,%.4f,%d,%.4f,%.4f,%.2f,%.4f,%.2f,%d,%d%n",
+                        phase.name, data.tickers, data.days, data.volatility, data.missingRate, iterations,
+                        result.meanMillis(), result.minMillis(), result.opsPerSecond(),
+                        result.megabytesPerOp(), result.megabytesPerSecond(), result.gcCount, result.gcMillis);
+                csv.flush();
+            }
+        }
+    }
+
+    // One pipeline phase: setup builds its input untimed, run is the timed operation
+    abstract static class Phase
+    {
+        final String name;
+
+        Phase(String name)
+        {
+            this.name = name;
+        }
+
+        void setup() throws Exception
+        {
+        }
+
+        abstract Object run() throws Exception;
+    }
+
+    private static List<Phase> phases(final Fixture fixture)
+    {
+        ArrayList<Phase> phases = new ArrayList<Phase>();
+
+        phases.add(new Phase("movingAverage")
+        {
+            Object run()
+            {
+                return fixture.loadSeries();
+            }
+        });
+
+        phases.add(new Phase("alignData")
+        {
+            Collection<TransactionSeries> input;
+
+            void setup()
+            {
+                input = Fixture.copy(fixture.loaded);
+            }
+
+            Object run()
+            {
+                CompanyMining.alignData(input);
+                return input;
+            }
+        });
+
+        phases.add(new Phase("setupSituations")
+        {
+            Collection<TransactionSeries> input;
+
+            void setup()
+            {
+                input = Fixture.copy(fixture.aligned);
+            }
+
+            Object run()
+            {
+                CompanyMining.setupSituations(input);
+                return input;
+            }
+        });
+
+        phases.add(new Phase("createItemSets")
+        {
+            Object run()
+            {
+                return CompanyMining.createItemSets(fixture.classified);
+            }
+        });
+
+        phases.add(new Phase("outputItemsets")
+        {
+            Object run() throws Exception
+            {
+                CompanyMining.outputItemsets("data.dat", fixture.transactions);
+                return fixture.transactions;
+            }
+        });
+
+        phases.add(new Phase("translateOutput")
+        {
+            Object run()
+            {
+                CompanyMining.translateOutput(fixture.itemsets);
+                return fixture.itemsets;
+            }
+        });
+
+        return phases;
+    }
+
+    private static Result measure(Phase phase, int warmup, int iterations) throws Exception
+    {
+        PrintStream console = System.out;
+        // the phases print as they go; that cost is measured, the text is thrown away
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try
+        {
+            for (int i = 0; i < warmup; i++)
+            {
+                phase.setup();
+                blackhole = phase.run();
+            }
+
+            Result result = new Result(iterations);
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            for (int i = 0; i < iterations; i++)
+            {
+                phase.setup();
+                long allocatedBefore = MiningRun.threadAllocatedBytes();
+                long start = System.nanoTime();
+                blackhole = phase.run();
+                result.nanos[i] = System.nanoTime() - start;
+                long allocatedAfter = MiningRun.threadAllocatedBytes();
+                result.bytes[i] = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+            }
+            result.gcCount = gcCount() - gcCountBefore;
+            result.gcMillis = gcMillis() - gcMillisBefore;
+            return result;
+        }
+        finally
+        {
+            System.setOut(console);
+        }
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    static class Result
+    {
+        final long[] nanos;
+        final long[] bytes;
+        long gcCount;
+        long gcMillis;
+
+        Result(int iterations)
+        {
+            nanos = new long[iterations];
+            bytes = new long[iterations];
+        }
+
+        double meanMillis()
+        {
+            long total = 0;
+            for (long n : nanos)
+                total += n;
+            return total / 1.0e6d / Math.max(1, nanos.length);
+        }
+
+        double minMillis()
+        {
+            long min = Long.MAX_VALUE;
+            for (long n : nanos)
+                min = Math.min(min, n);
+            return nanos.length == 0 ? 0.0d : min / 1.0e6d;
+        }
+
+        double opsPerSecond()
+        {
+            double mean = meanMillis();
+            return mean > 0.0d ? 1000.0d / mean : 0.0d;
+        }
+
+        // -1 where the JVM does not track thread allocation
+        double megabytesPerOp()
+        {
+            long total = 0;
+            for (long b : bytes)
+            {
+                if (b < 0)
+                    return -1.0d;
+                total += b;
+            }
+            return total / 1048576.0d / Math.max(1, bytes.length);
+        }
+
+        double megabytesPerSecond()
+        {
+            double perOp = megabytesPerOp();
+            return perOp < 0.0d ? -1.0d : perOp * opsPerSecond();
+        }
+    }
+
+    // Inputs of every phase, each the output of the phase before it
+    static class Fixture
+    {
+        final SyntheticPriceVolume data;
+        // raw rows per ticker, as the load query would return them
+        final ArrayList<int[]> dates = new ArrayList<int[]>();
+        final ArrayList<double[]> capital = new ArrayList<double[]>();
+
+        final List<TransactionSeries> loaded;
+        final List<TransactionSeries> aligned;
+        final List<TransactionSeries> classified;
+        final List<int[]> transactions;
+        final List<Itemset> itemsets;
+
+        Fixture(SyntheticPriceVolume data, String minSupport)
+        {
+            this.data = data;
+            CompanyMining.companyToInt = new HashMap<String, Integer>();
+            CompanyMining.intToCompany = new HashMap<Integer, String>();
+            for (int i = 0; i < data.tickers; i++)
+            {
+                CompanyMining.companyToInt.put(data.getTicker(i), i);
+                CompanyMining.intToCompany.put(i, data.getTicker(i));
+            }
+
+            final int[][] tickerDates = new int[data.tickers][data.days];
+            final double[][] tickerCapital = new double[data.tickers][data.days];
+            final int[] rows = new int[data.tickers];
+            data.forEachByTicker(new SyntheticPriceVolume.RowVisitor()
+            {
+                public void row(String ticker, int date, double closePrice, double volume)
+                {
+                    int t = CompanyMining.companyToInt.get(ticker);
+                    tickerDates[t][rows[t]] = date;
+                    tickerCapital[t][rows[t]] = closePrice * volume;
+                    rows[t]++;
+                }
+            });
+            for (int t = 0; t < data.tickers; t++)
+            {
+                dates.add(Arrays.copyOf(tickerDates[t], rows[t]));
+                capital.add(Arrays.copyOf(tickerCapital[t], rows[t]));
+            }
+
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try
+            {
+                loaded = loadSeries();
+                aligned = copy(loaded);
+                CompanyMining.alignData(aligned);
+                classified = copy(aligned);
+                CompanyMining.setupSituations(classified);
+                transactions = CompanyMining.createItemSets(classified);
+                itemsets = new LCM().mine(transactions, ClosedItemsetMiner.minSupportCount(minSupport, transactions.size()));
+            }
+            finally
+            {
+                System.setOut(console);
+            }
+        }
+
+        // The loop getCompanyData runs over its result set, for every ticker
+        List<TransactionSeries> loadSeries()
+        {
+            ArrayList<TransactionSeries> all = new ArrayList<TransactionSeries>();
+            for (int t = 0; t < dates.size(); t++)
+            {
+                int[] tickerDates = dates.get(t);
+                double[] tickerCapital = capital.get(t);
+                TransactionSeries results = new TransactionSeries(data.getTicker(t), t);
+                MovingAverage movingAvg = MovingAverage.create(CompanyMining.movingAverageType, CompanyMining.movingAverageWindow);
+                for (int i = 0; i < tickerDates.length; i++)
+                    results.add(tickerDates[i], tickerCapital[i], movingAvg.add(tickerCapital[i]));
+
+                TransactionSeries companyData = CompanyMining.finishCompanyData(results);
+                if (companyData != null)
+                    all.add(companyData);
+            }
+            return all;
+        }
+
+        static List<TransactionSeries> copy(Collection<TransactionSeries> series)
+        {
+            ArrayList<TransactionSeries> copies = new ArrayList<TransactionSeries>();
+            for (TransactionSeries s : series)
+            {
+                TransactionSeries c = new TransactionSeries(s.name, s.id, s.size);
+                c.size = s.size;
+                System.arraycopy(s.dates, 0, c.dates, 0, s.size);
+                System.arraycopy(s.capital, 0, c.capital, 0, s.size);
+                System.arraycopy(s.movingAverage, 0, c.movingAverage, 0, s.size);
+                System.arraycopy(s.situation, 0, c.situation, 0, s.size);
+                copies.add(c);
+            }
+            return copies;
+        }
+    }
+}//end class
@@ -0,0 +1,83 @@
+/*
+ * PriceDataSource
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Where the Company and PriceVolume data come from. The analysis only
+ * reads through this interface, so the same run works against MySQL, an
+ * embedded H2 or SQLite database with the same schema, CSV files, or
+ * synthetic data. Chosen with dataSource= in readerparams.txt:
+ *
+ *   jdbc       dburl, user and password; dbDriver when not MySQL
+ *   csv        dataDir holding Company.csv and PriceVolume.csv
+ *   synthetic  syntheticTickers, syntheticDays, syntheticVolatility,
+ *              syntheticMissingRate and syntheticSeed
+ */
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+public interface PriceDataSource extends AutoCloseable
+{
+    interface PriceVisitor
+    {
+        void row(String ticker, int date, double closePrice, double volume);
+    }
+
+
+    // Every ticker of the Company table
+    List<String> getTickers() throws SQLException, IOException;
+
+    // Industries that have price data, sorted
+    List<String> getIndustries() throws SQLException, IOException;
+
+    // Industry of every ticker
+    Map<String, String> getTickerIndustries() throws SQLException, IOException;
+
+    // First and last TransDate of every ticker and industry
+    DateRangeIndex getDateRanges() throws SQLException, IOException;
+
+    // Rows of one ticker, or of all tickers one after another when ticker is null, each in date order
+    void forEachPrice(String ticker, String startDate, String endDate, PriceVisitor visitor)
+    throws SQLException, IOException;
+
+    // Rows of all tickers ordered by date, for the streaming pipeline
+    void forEachPriceByDate(String startDate, String endDate, PriceVisitor visitor)
+    throws SQLException, IOException;
+
+    // Total ClosePrice * Volume of an industry per day, oldest day first
+    void forEachIndustryDay(String industry, String startDate, String endDate, DailyAggregator.DaySink sink)
+    throws SQLException, IOException;
+
+    // Trading days in the range per ticker, or per industry
+    Map<String, Integer> countDays(String startDate, String endDate, boolean byIndustry)
+    throws SQLException, IOException;
+
+    void close() throws SQLException;
+
+
+    // Open the source configured in readerparams.txt
+    static PriceDataSource create(MiningConfig config) throws SQLException, IOException, ClassNotFoundException
+    {
+        String type = config.getString("dataSource", "jdbc").toLowerCase();
+        switch (type)
+        {
+            case "jdbc":
+                return JdbcDataSource.connect(config);
+            case "csv":
+                return InMemoryDataSource.readCsv(new File(config.getString("dataDir", "data")));
+            case "synthetic":
+                return InMemoryDataSource.synthetic(new SyntheticPriceVolume(
+                        config.getInt("syntheticTickers", 500),
+                        config.getInt("syntheticDays", 1260),
+                        config.getDouble("syntheticVolatility", 0.02d),
+                        config.getDouble("syntheticMissingRate", 0.01d),
+                        config.getInt("syntheticSeed", 1)));
+            default:
+                throw new IllegalArgumentException("Unknown data source: " + type);
+        }
+    }
+}//end interface
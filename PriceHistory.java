@@ -0,0 +1,348 @@
+/*
+ * PriceHistory
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * One load of the dates and capital of every company or industry through
+ * the configured PriceDataSource, numbered with the item ids the batch
+ * run gives them (tickers by their place in the Company table, rows of
+ * other tickers skipped), held as plain columns that are never
+ * written after loading, so any number of mining runs can read them at
+ * once. A run asks for the rows each series has on the days a window and
+ * alignment policy keep, gives its own moving averages, and gets back the
+ * increasing and decreasing day bitmasks of its classification, from
+ * which the transactions or the vertical database are built. Nothing of
+ * the loaded columns is copied. Intersection alignments are cached, as
+ * every window with the same series shares one.
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PriceHistory
+{
+    final String analysis;
+    final String[] names;
+    // item id of every series, as the batch run numbers it
+    final int[] ids;
+    final int[][] dates;
+    final double[][] capital;
+    final HashMap<Integer, String> dictionary = new HashMap<Integer, String>();
+    final long rows;
+    final long loadMillis;
+    final long loadedAt = System.currentTimeMillis();
+    // intersections by the number of series too short for the window, almost always one entry
+    private final ConcurrentHashMap<Integer, Alignment> intersections = new ConcurrentHashMap<Integer, Alignment>();
+    private final int[] sortedLengths;
+
+
+    PriceHistory(String analysis, List<String> names, List<Integer> ids, List<int[]> dates, List<double[]> capital,
+                 long loadMillis)
+    {
+        this.analysis = analysis;
+        this.names = names.toArray(new String[names.size()]);
+        this.ids = new int[this.names.length];
+        this.dates = dates.toArray(new int[dates.size()][]);
+        this.capital = capital.toArray(new double[capital.size()][]);
+        this.loadMillis = loadMillis;
+        long total = 0;
+        sortedLengths = new int[this.names.length];
+        for (int i = 0; i < this.names.length; i++)
+        {
+            this.ids[i] = ids.get(i);
+            dictionary.put(this.ids[i], this.names[i]);
+            total += this.dates[i].length;
+            sortedLengths[i] = this.dates[i].length;
+        }
+        rows = total;
+        Arrays.sort(sortedLengths);
+    }
+
+    // The rows of the series long enough for the window on the days the batch run keeps for it
+    Alignment align(int window, SeriesAligner.Policy policy)
+    {
+        if (policy != SeriesAligner.Policy.INTERSECTION)
+            return union(window, policy == SeriesAligner.Policy.UNION_FILL);
+
+        Alignment common = intersections.computeIfAbsent(tooShort(window), k -> intersection(window));
+        // the first common day on which every member has a full window behind it
+        int from = 0;
+        for (int[] memberRows : common.rows)
+        {
+            int k = Arrays.binarySearch(memberRows, window - 1);
+            from = Math.max(from, k >= 0 ? k : -k - 1);
+        }
+        return new Alignment(common.members, common.calendar, common.rows, Math.min(from, common.calendar.length));
+    }
+
+    // The moving average of every row of one series, MovingAverage.NOT_READY before a full window
+    double[] averages(int series, String type, int window)
+    {
+        MovingAverage average = MovingAverage.create(type, window);
+        double[] column = capital[series];
+        double[] averages = new double[column.length];
+        for (int r = 0; r < column.length; r++)
+            averages[r] = average.add(column[r]);
+        return averages;
+    }
+
+    // Classify the kept days of every member, averages[m] by row of member m; a member at a time
+    // is gathered into scratch columns so the classifier's kernels see plain arrays
+    Situations classify(Alignment alignment, double[][] averages, SituationClassifier classifier)
+    {
+        int days = alignment.days();
+        int words = (days + 63) >>> 6;
+        double[] capitalColumn = new double[days];
+        double[] averageColumn = new double[days];
+        byte[] situation = new byte[days];
+        long[][] increasing = new long[alignment.members.length][words];
+        long[][] decreasing = new long[alignment.members.length][words];
+        for (int m = 0; m < alignment.members.length; m++)
+        {
+            double[] memberCapital = capital[alignment.members[m]];
+            int[] memberRows = alignment.rows[m];
+            for (int k = 0; k < days; k++)
+            {
+                int r = memberRows[alignment.from + k];
+                capitalColumn[k] = r < 0 ? Double.NaN : memberCapital[r];
+                averageColumn[k] = r < 0 ? Double.NaN : averages[m][r];
+            }
+            classifier.classify(capitalColumn, averageColumn, days, situation, increasing[m], decreasing[m]);
+        }
+        int[] memberIds = new int[alignment.members.length];
+        for (int m = 0; m < memberIds.length; m++)
+            memberIds[m] = ids[alignment.members[m]];
+        return new Situations(memberIds, increasing, decreasing, days);
+    }
+
+    private int tooShort(int window)
+    {
+        int k = Arrays.binarySearch(sortedLengths, window);
+        if (k < 0)
+            return -k - 1;
+        while (k > 0 && sortedLengths[k - 1] == window)
+            k--;
+        return k;
+    }
+
+    private int[] members(int window)
+    {
+        int[] members = new int[names.length - tooShort(window)];
+        int m = 0;
+        for (int i = 0; i < names.length; i++)
+        {
+            if (dates[i].length >= window)
+                members[m++] = i;
+        }
+        return members;
+    }
+
+    // Every day all members have, from each member's first row on
+    private Alignment intersection(int window)
+    {
+        int[] members = members(window);
+        int[][] memberDates = new int[members.length][];
+        for (int m = 0; m < members.length; m++)
+            memberDates[m] = dates[members[m]];
+        int[][] rows = SeriesAligner.intersectionRows(memberDates);
+        int[] calendar = new int[members.length == 0 ? 0 : rows[0].length];
+        for (int k = 0; k < calendar.length; k++)
+            calendar[k] = memberDates[0][rows[0][k]];
+        return new Alignment(members, calendar, rows, 0);
+    }
+
+    // Every day any member has from its first full window on; a member without that day has the
+    // row of its last known day when filling, or none
+    private Alignment union(int window, boolean fill)
+    {
+        int[] members = members(window);
+        int total = 0;
+        for (int member : members)
+            total += dates[member].length - (window - 1);
+        int[] calendar = new int[total];
+        int n = 0;
+        for (int member : members)
+        {
+            System.arraycopy(dates[member], window - 1, calendar, n, dates[member].length - (window - 1));
+            n += dates[member].length - (window - 1);
+        }
+        Arrays.sort(calendar);
+        int days = 0;
+        for (int k = 0; k < calendar.length; k++)
+        {
+            if (days == 0 || calendar[k] != calendar[days - 1])
+                calendar[days++] = calendar[k];
+        }
+        calendar = Arrays.copyOf(calendar, days);
+
+        int[][] rows = new int[members.length][days];
+        for (int m = 0; m < members.length; m++)
+        {
+            int[] memberDates = dates[members[m]];
+            int r = window - 1;
+            int last = -1;
+            for (int k = 0; k < days; k++)
+            {
+                // every member date is on the calendar, so the next row is never before day k
+                if (r < memberDates.length && memberDates[r] == calendar[k])
+                {
+                    last = r;
+                    rows[m][k] = r++;
+                }
+                else
+                {
+                    rows[m][k] = fill ? last : -1;
+                }
+            }
+        }
+        return new Alignment(members, calendar, rows, 0);
+    }
+
+    // Capital per day of every company or industry, read once through the configured data source
+    public static PriceHistory load(MiningConfig config, String analysis) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        final ArrayList<String> names = new ArrayList<String>();
+        final ArrayList<Integer> ids = new ArrayList<Integer>();
+        final ArrayList<int[]> dates = new ArrayList<int[]>();
+        final ArrayList<double[]> capital = new ArrayList<double[]>();
+
+        PriceDataSource source = PriceDataSource.create(config);
+        try
+        {
+            String[] range = source.getDateRanges().overallRange();
+            if (analysis.equals("company"))
+            {
+                // the tickers of the Company table, numbered by position as the batch run numbers them
+                List<String> tickers = source.getTickers();
+                final HashMap<String, Integer> tickerIds = new HashMap<String, Integer>();
+                for (int i = 0; i < tickers.size(); i++)
+                    tickerIds.put(tickers.get(i), i);
+
+                // one ordered pass, a series ends when the ticker changes
+                final String[] company = new String[1];
+                final TransactionSeries[] current = new TransactionSeries[1];
+                source.forEachPrice(null, range[0], range[1], (ticker, date, closePrice, volume) ->
+                {
+                    if (!ticker.equals(company[0]))
+                    {
+                        add(current[0], names, ids, dates, capital);
+                        company[0] = ticker;
+                        Integer id = tickerIds.get(ticker);
+                        // rows for tickers missing from Company are skipped like the natural join would
+                        current[0] = id == null ? null : new TransactionSeries(ticker, id);
+                    }
+                    if (current[0] != null)
+                        current[0].add(date, closePrice * volume, 0.0d);
+                });
+                add(current[0], names, ids, dates, capital);
+            }
+            else if (analysis.equals("industry"))
+            {
+                List<String> industries = source.getIndustries();
+                range = source.getDateRanges().commonIndustryRange(industries);
+                for (int i = 0; i < industries.size(); i++)
+                {
+                    final TransactionSeries series = new TransactionSeries(industries.get(i), i);
+                    source.forEachIndustryDay(industries.get(i), range[0], range[1], (date, total) -> series.add(date, total, 0.0d));
+                    add(series, names, ids, dates, capital);
+                }
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown analysis: " + analysis);
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+
+        return new PriceHistory(analysis, names, ids, dates, capital, System.currentTimeMillis() - start);
+    }
+
+    private static void add(TransactionSeries series, List<String> names, List<Integer> ids, List<int[]> dates,
+                            List<double[]> capital)
+    {
+        if (series == null || series.size == 0)
+            return;
+        names.add(series.name);
+        ids.add(series.id);
+        dates.add(Arrays.copyOf(series.dates, series.size));
+        capital.add(Arrays.copyOf(series.capital, series.size));
+    }
+
+
+    // rows[m][from + k] is the row of series members[m] on day calendar[from + k], -1 where it has none
+    static final class Alignment
+    {
+        final int[] members;
+        final int[] calendar;
+        final int[][] rows;
+        final int from;
+
+        Alignment(int[] members, int[] calendar, int[][] rows, int from)
+        {
+            this.members = members;
+            this.calendar = calendar;
+            this.rows = rows;
+            this.from = from;
+        }
+
+        int days()
+        {
+            return calendar.length - from;
+        }
+    }
+
+    // Increasing and decreasing day bitmasks of each classified member, bit k being the k-th kept day
+    static final class Situations
+    {
+        final int[] ids;
+        final long[][] increasing;
+        final long[][] decreasing;
+        final int days;
+
+        Situations(int[] ids, long[][] increasing, long[][] decreasing, int days)
+        {
+            this.ids = ids;
+            this.increasing = increasing;
+            this.decreasing = decreasing;
+            this.days = days;
+        }
+
+        // The transactions the batch run builds: each day's increasing ids, then its decreasing ids, if any
+        List<int[]> transactions()
+        {
+            ArrayList<int[]> transactions = new ArrayList<int[]>();
+            int[] up = new int[ids.length];
+            int[] down = new int[ids.length];
+            for (int day = 0; day < days; day++)
+            {
+                int word = day >>> 6;
+                long bit = 1L << (day & 63);
+                int u = 0;
+                int d = 0;
+                for (int m = 0; m < ids.length; m++)
+                {
+                    if ((increasing[m][word] & bit) != 0)
+                        up[u++] = ids[m];
+                    if ((decreasing[m][word] & bit) != 0)
+                        down[d++] = ids[m];
+                }
+                if (u > 0)
+                    transactions.add(Arrays.copyOf(up, u));
+                if (d > 0)
+                    transactions.add(Arrays.copyOf(down, d));
+            }
+            return transactions;
+        }
+
+        VerticalDatabase vertical()
+        {
+            return VerticalDatabase.fromMasks(ids, increasing, decreasing, days);
+        }
+    }
+}//end class
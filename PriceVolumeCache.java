@@ -0,0 +1,326 @@
+/*
+ * PriceVolumeCache
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Local copy of PriceVolume, four files per ticker. Layout, big endian:
+ *
+ *   .pvh  int magic 'PVC2', int row count, int high water TransDate (epoch day)
+ *   .pvd  int[rows] dates
+ *   .pvp  double[rows] close prices
+ *   .pvv  double[rows] volumes
+ *
+ * Files are memory mapped when read. refresh() only asks the database for
+ * rows newer than each ticker's high water mark, one query per group of
+ * tickers sharing a mark, so a stale ticker does not drag the others back.
+ * Tickers not cached yet are filled by one ordered query, of the whole
+ * table when there are more of them than fit in one list, split by ticker.
+ * New rows are appended to the column files and the header is then
+ * replaced, which is what makes them visible; bytes past the header's row
+ * count are left over from an interrupted refresh and are cut off before
+ * the next append. A nightly run moves and writes one day of data.
+ */
+
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+
+public class PriceVolumeCache
+{
+    public static final int MAGIC = 0x50564332;
+    private static final int HEADER_BYTES = 12;
+    private static final int NO_DATA = Integer.MIN_VALUE;
+    // tickers bound into one "Ticker in (...)" query
+    private static final int TICKERS_PER_QUERY = 500;
+
+
+    // Read only column views of one ticker, backed by the mapped file
+    public static class Columns
+    {
+        public final String ticker;
+        public final int size;
+        public final IntBuffer dates;
+        public final DoubleBuffer close;
+        public final DoubleBuffer volume;
+
+        Columns(String ticker, int size, IntBuffer dates, DoubleBuffer close, DoubleBuffer volume)
+        {
+            this.ticker = ticker;
+            this.size = size;
+            this.dates = dates;
+            this.close = close;
+            this.volume = volume;
+        }
+
+        // First row on or after the given epoch day
+        public int lowerBound(int epochDay)
+        {
+            int lo = 0, hi = size;
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+                if (dates.get(mid) < epochDay)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+
+    private final Path dir;
+    private final int fetchSize;
+    private long rowsFetched;
+    private int tickersUpdated;
+
+
+    public PriceVolumeCache(String dir, int fetchSize) throws IOException
+    {
+        this.dir = Paths.get(dir);
+        this.fetchSize = fetchSize;
+        Files.createDirectories(this.dir);
+    }
+
+    public long getRowsFetched()
+    {
+        return rowsFetched;
+    }
+
+    public int getTickersUpdated()
+    {
+        return tickersUpdated;
+    }
+
+    // High water TransDate of a cached ticker, NO_DATA if it is not cached yet
+    public int highWater(String ticker) throws IOException
+    {
+        int[] header = header(ticker);
+        return header == null ? NO_DATA : header[1];
+    }
+
+    // Row count and high water mark of a cached ticker, null if it is not cached
+    private int[] header(String ticker) throws IOException
+    {
+        Path file = fileFor(ticker, ".pvh");
+        if (!Files.exists(file))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), HEADER_BYTES)))
+        {
+            if (in.readInt() != MAGIC)
+                return null;
+            return new int[]{in.readInt(), in.readInt()};
+        }
+    }
+
+    // Map the columns of one ticker, null if the ticker is not cached
+    public Columns read(String ticker) throws IOException
+    {
+        int[] header = header(ticker);
+        if (header == null)
+            return null;
+        int rows = header[0];
+
+        return new Columns(ticker, rows,
+                map(fileFor(ticker, ".pvd"), 4L * rows).asIntBuffer(),
+                map(fileFor(ticker, ".pvp"), 8L * rows).asDoubleBuffer(),
+                map(fileFor(ticker, ".pvv"), 8L * rows).asDoubleBuffer());
+    }
+
+    // Bring every ticker up to date with the database
+    public void refresh(Connection conn, List<String> tickers) throws SQLException, IOException
+    {
+        rowsFetched = 0;
+        tickersUpdated = 0;
+
+        // tickers grouped by high water mark, most share the last trading day
+        HashMap<String, Integer> watermarks = new HashMap<String, Integer>();
+        TreeMap<Integer, List<String>> byWatermark = new TreeMap<Integer, List<String>>();
+        List<String> uncached = new ArrayList<String>();
+        for (String ticker : tickers)
+        {
+            int watermark = highWater(ticker);
+            if (watermark == NO_DATA)
+            {
+                uncached.add(ticker);
+            }
+            else
+            {
+                watermarks.put(ticker, watermark);
+                byWatermark.computeIfAbsent(watermark, w -> new ArrayList<String>()).add(ticker);
+            }
+        }
+
+        // each group streams only the days after its own watermark
+        for (Map.Entry<Integer, List<String>> group : byWatermark.entrySet())
+        {
+            List<String> groupTickers = group.getValue();
+            for (int from = 0; from < groupTickers.size(); from += TICKERS_PER_QUERY)
+                fetch(conn, group.getKey(), groupTickers.subList(from, Math.min(groupTickers.size(), from + TICKERS_PER_QUERY)),
+                        watermarks);
+        }
+
+        // tickers seen for the first time are loaded in full with one ordered query,
+        // over the whole table when there are too many to list, as on a cold cache
+        if (!uncached.isEmpty())
+        {
+            HashMap<String, Integer> none = new HashMap<String, Integer>();
+            for (String ticker : uncached)
+                none.put(ticker, NO_DATA);
+            fetch(conn, NO_DATA, uncached.size() > TICKERS_PER_QUERY ? null : uncached, none);
+        }
+    }
+
+    // One ordered query for the rows after a watermark (NO_DATA for all of them) of the listed tickers, or of every ticker
+    private void fetch(Connection conn, int after, List<String> tickers, Map<String, Integer> watermarks)
+    throws SQLException, IOException
+    {
+        StringBuilder sql = new StringBuilder(" select Ticker, TransDate, ClosePrice, Volume from PriceVolume");
+        String where = " where ";
+        if (after != NO_DATA)
+        {
+            sql.append(where).append("TransDate > ?");
+            where = " and ";
+        }
+        if (tickers != null)
+        {
+            sql.append(where).append("Ticker in (");
+            for (int i = 0; i < tickers.size(); i++)
+                sql.append(i > 0 ? ", ?" : "?");
+            sql.append(")");
+        }
+        sql.append(" order by Ticker, TransDate ASC");
+
+        PreparedStatement pstmt = conn.prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pstmt.setFetchSize(fetchSize);
+        int param = 1;
+        if (after != NO_DATA)
+            pstmt.setDate(param++, java.sql.Date.valueOf(java.time.LocalDate.ofEpochDay(after)));
+        for (int i = 0; tickers != null && i < tickers.size(); i++)
+            pstmt.setString(param++, tickers.get(i));
+        appendRows(pstmt.executeQuery(), watermarks);
+        pstmt.close();
+    }
+
+    // Rows must be ordered by ticker then date, rows at or below a ticker's watermark are skipped
+    private void appendRows(ResultSet rows, Map<String, Integer> watermarks) throws SQLException, IOException
+    {
+        String current = null;
+        int watermark = NO_DATA;
+        int n = 0;
+        int[] dates = new int[256];
+        double[] close = new double[256];
+        double[] volume = new double[256];
+        long seen = 0;
+
+        for (; rows.next(); seen++)
+        {
+            String ticker = rows.getString(1);
+            if (!ticker.equals(current))
+            {
+                if (n > 0)
+                    append(current, dates, close, volume, n);
+                current = ticker;
+                Integer mark = watermarks.get(ticker);
+                watermark = mark == null ? Integer.MAX_VALUE : mark;
+                n = 0;
+            }
+
+            int date = TransactionSeries.toEpochDay(rows.getDate(2));
+            if (date <= watermark)
+                continue;
+
+            if (n == dates.length)
+            {
+                dates = Arrays.copyOf(dates, n * 2);
+                close = Arrays.copyOf(close, n * 2);
+                volume = Arrays.copyOf(volume, n * 2);
+            }
+            dates[n] = date;
+            close[n] = rows.getDouble(3);
+            volume[n] = rows.getDouble(4);
+            n++;
+            rowsFetched++;
+        }
+
+        if (n > 0)
+            append(current, dates, close, volume, n);
+        rows.close();
+        RunReport.countQuery(seen, fetchSize);
+    }
+
+    // Append the new rows to the column files, then publish them by replacing the header
+    private void append(String ticker, int[] dates, double[] close, double[] volume, int n) throws IOException
+    {
+        int[] header = header(ticker);
+        int oldRows = header == null ? 0 : header[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 * n);
+        for (int i = 0; i < n; i++)
+            buffer.putInt(dates[i]);
+        appendColumn(fileFor(ticker, ".pvd"), 4L * oldRows, buffer);
+        for (int i = 0; i < n; i++)
+            buffer.putDouble(close[i]);
+        appendColumn(fileFor(ticker, ".pvp"), 8L * oldRows, buffer);
+        for (int i = 0; i < n; i++)
+            buffer.putDouble(volume[i]);
+        appendColumn(fileFor(ticker, ".pvv"), 8L * oldRows, buffer);
+
+        Path file = fileFor(ticker, ".pvh");
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(oldRows + n);
+            out.writeInt(dates[n - 1]);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // a single file cache from before the column layout is superseded now
+        Files.deleteIfExists(fileFor(ticker, ".pvc"));
+        tickersUpdated++;
+    }
+
+    // Write the buffer's contents at the end of the committed bytes of a column file and clear it
+    private static void appendColumn(Path file, long committed, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            // anything past the committed rows is from a refresh that never wrote its header
+            if (channel.size() < committed)
+                throw new IOException(file + " is missing rows its header lists");
+            if (channel.size() > committed)
+                channel.truncate(committed);
+            channel.position(committed);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+        buffer.clear();
+    }
+
+    private Path fileFor(String ticker, String extension) throws UnsupportedEncodingException
+    {
+        return dir.resolve(URLEncoder.encode(ticker, "UTF-8") + extension);
+    }
+
+    private static ByteBuffer map(Path file, long length) throws IOException
+    {
+        if (length == 0)
+            return ByteBuffer.allocate(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < length)
+                throw new IOException(file + " is shorter than its header says");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+}//end class
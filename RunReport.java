@@ -0,0 +1,206 @@
+/*
+ * RunReport
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Measures each phase of an analysis run: wall time, rows handled and
+ * rows per second, bytes allocated by the driving thread, peak heap of the
+ * process (see MiningRun for how overlapping phases share it), the JDBC
+ * queries, round trips and rows fetched while the phase ran, and any
+ * extra counts such as itemsets produced. The run is written as JSON or
+ * CSV, and every phase can also be committed as a JFR event.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RunReport
+{
+    // Every JDBC query in the process reports here, whichever phase is running
+    private static final AtomicLong queries = new AtomicLong();
+    private static final AtomicLong roundTrips = new AtomicLong();
+    private static final AtomicLong rowsFetched = new AtomicLong();
+
+    private final String analysis;
+    private final boolean jfrEvents;
+    private final long startMillis = System.currentTimeMillis();
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+
+    public RunReport(String analysis, boolean jfrEvents)
+    {
+        this.analysis = analysis;
+        this.jfrEvents = jfrEvents;
+    }
+
+    // Record one executed query; a positive fetch size means the rows came in chunks of that many
+    public static void countQuery(long rows, int fetchSize)
+    {
+        queries.incrementAndGet();
+        rowsFetched.addAndGet(rows);
+        roundTrips.addAndGet(1 + (fetchSize > 0 ? rows / fetchSize : 0));
+    }
+
+    // Phases may be begun from several threads, each is measured on the thread that begins it
+    public Phase begin(String name)
+    {
+        Phase phase = new Phase(name);
+        synchronized (phases)
+        {
+            phases.add(phase);
+        }
+        return phase;
+    }
+
+    public List<Phase> getPhases()
+    {
+        synchronized (phases)
+        {
+            return new ArrayList<Phase>(phases);
+        }
+    }
+
+    public class Phase
+    {
+        public final String name;
+        public long millis;
+        public long rows;
+        public long allocatedBytes = -1;
+        public long peakHeapBytes;
+        public long jdbcQueries;
+        public long jdbcRoundTrips;
+        public long jdbcRows;
+        public final LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+
+        private final long startNanos;
+        private final long startAllocated;
+        private final long startQueries = queries.get();
+        private final long startRoundTrips = roundTrips.get();
+        private final long startRows = rowsFetched.get();
+        // a PhaseEvent, typed as Object so jdk.jfr is only loaded when asked for
+        private final Object event;
+
+        Phase(String name)
+        {
+            this.name = name;
+            MiningRun.beginPeakHeap();
+            event = jfrEvents ? PhaseEvent.start() : null;
+            startAllocated = MiningRun.threadAllocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        // Rows, days or transactions the phase worked through, for the rate
+        public Phase rows(long n)
+        {
+            rows = n;
+            return this;
+        }
+
+        public Phase count(String key, long value)
+        {
+            counts.put(key, value);
+            return this;
+        }
+
+        public void end()
+        {
+            millis = (System.nanoTime() - startNanos) / 1000000L;
+            long allocated = MiningRun.threadAllocatedBytes();
+            if (startAllocated >= 0 && allocated >= 0)
+                allocatedBytes = allocated - startAllocated;
+            peakHeapBytes = MiningRun.endPeakHeap();
+            jdbcQueries = queries.get() - startQueries;
+            jdbcRoundTrips = roundTrips.get() - startRoundTrips;
+            jdbcRows = rowsFetched.get() - startRows;
+
+            if (event != null)
+                ((PhaseEvent) event).finish(analysis, this);
+        }
+
+        public double rowsPerSecond()
+        {
+            return millis > 0 ? rows * 1000.0d / millis : 0.0d;
+        }
+    }
+
+    // One line per phase for the console
+    public String summary()
+    {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-16s %9s %12s %12s %10s %10s %8s %10s%n",
+                "phase", "ms", "rows", "rows/s", "alloc MB", "peak MB", "queries", "jdbc rows"));
+        for (Phase p : phases)
+        {
+            out.append(String.format("%-16s %9d %12d %12.0f %10.1f %10.1f %8d %10d%n",
+                    p.name, p.millis, p.rows, p.rowsPerSecond(), p.allocatedBytes / 1048576.0d,
+                    p.peakHeapBytes / 1048576.0d, p.jdbcQueries, p.jdbcRows));
+        }
+        return out.toString();
+    }
+
+    // A .csv file name gives one row per phase, anything else JSON
+    public void write(String file) throws IOException
+    {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try
+        {
+            if (file.toLowerCase().endsWith(".csv"))
+                writeCsv(writer);
+            else
+                writeJson(writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    public void writeCsv(PrintWriter writer)
+    {
+        writer.println("analysis,start,phase,millis,rows,rowsPerSecond,allocatedBytes,peakHeapBytes,"
+                + "jdbcQueries,jdbcRoundTrips,jdbcRows,counts");
+        for (Phase p : phases)
+        {
+            StringBuilder counts = new StringBuilder();
+            for (Map.Entry<String, Long> e : p.counts.entrySet())
+            {
+                if (counts.length() > 0)
+                    counts.append(';');
+                counts.append(e.getKey()).append('=').append(e.getValue());
+            }
+            writer.printf(Locale.ROOT, "%s,%d,%s,%d,%d,%.1f,%d,%d,%d,%d,%d,%s%n",
+                    analysis, startMillis, p.name, p.millis, p.rows, p.rowsPerSecond(), p.allocatedBytes,
+                    p.peakHeapBytes, p.jdbcQueries, p.jdbcRoundTrips, p.jdbcRows, counts);
+        }
+    }
+
+    public void writeJson(PrintWriter writer)
+    {
+        long totalMillis = 0;
+        for (Phase p : phases)
+            totalMillis += p.millis;
+
+        writer.println("{");
+        writer.printf("  \"analysis\": \"%s\",%n", analysis);
+        writer.printf("  \"start\": %d,%n", startMillis);
+        writer.printf("  \"millis\": %d,%n", totalMillis);
+        writer.println("  \"phases\": [");
+        for (int i = 0; i < phases.size(); i++)
+        {
+            Phase p = phases.get(i);
+            writer.printf(Locale.ROOT, "    {\"name\": \"%s\", \"millis\": %d, \"rows\": %d, \"rowsPerSecond\": %.1f, "
+                    + "\"allocatedBytes\": %d, \"peakHeapBytes\": %d, \"jdbcQueries\": %d, \"jdbcRoundTrips\": %d, "
+                    + "\"jdbcRows\": %d",
+                    p.name, p.millis, p.rows, p.rowsPerSecond(), p.allocatedBytes, p.peakHeapBytes,
+                    p.jdbcQueries, p.jdbcRoundTrips, p.jdbcRows);
+            for (Map.Entry<String, Long> e : p.counts.entrySet())
+                writer.printf(", \"%s\": %d", e.getKey(), e.getValue());
+            writer.println(i + 1 < phases.size() ? "}," : "}");
+        }
+        writer.println("  ]");
+        writer.println("}");
+    }
+}//end class
@@ -0,0 +1,226 @@
+/*
+ * SeriesAligner
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Puts every series on a common trading calendar with a k-way merge over
+ * the sorted epoch-day dates, so that row i of every series is the same
+ * day afterwards. Intersection compacts each series in place; the union
+ * policies expand each series in place, working backwards from the end.
+ */
+
+import java.util.*;
+
+public class SeriesAligner
+{
+    public enum Policy
+    {
+        INTERSECTION,   // keep only days every series has
+        UNION_FILL,     // keep every day, missing days repeat the last known day
+        UNION_GAPS;     // keep every day, missing days are marked MISSING
+
+        public static Policy fromName(String name)
+        {
+            switch (name.trim().toLowerCase())
+            {
+                case "intersection":
+                    return INTERSECTION;
+                case "fill":
+                case "union-fill":
+                    return UNION_FILL;
+                case "gaps":
+                case "union-gaps":
+                    return UNION_GAPS;
+                default:
+                    throw new IllegalArgumentException("Unknown alignment policy: " + name);
+            }
+        }
+    }
+
+
+    // Align all series, returns the number of days on the common calendar
+    public static int align(Collection<TransactionSeries> series, Policy policy)
+    {
+        TransactionSeries[] all = series.toArray(new TransactionSeries[series.size()]);
+        if (all.length == 0)
+            return 0;
+
+        if (policy == Policy.INTERSECTION)
+            return intersect(all);
+
+        int[] calendar = unionCalendar(all);
+        for (TransactionSeries s : all)
+            expand(s, calendar, policy == Policy.UNION_FILL);
+        return calendar.length;
+    }
+
+    // Merge join on the sorted dates, keeping a day only when every cursor lands on it
+    static int intersect(TransactionSeries[] all)
+    {
+        int k = all.length;
+        int[] cursor = new int[k];
+        int kept = 0;
+
+        outer:
+        while (true)
+        {
+            // the candidate day is the latest current date of all cursors
+            int candidate = Integer.MIN_VALUE;
+            for (int i = 0; i < k; i++)
+            {
+                if (cursor[i] >= all[i].size)
+                    break outer;
+                candidate = Math.max(candidate, all[i].dates[cursor[i]]);
+            }
+
+            boolean inAll = true;
+            for (int i = 0; i < k; i++)
+            {
+                TransactionSeries s = all[i];
+                int c = cursor[i];
+                while (c < s.size && s.dates[c] < candidate)
+                    c++;
+                cursor[i] = c;
+
+                if (c >= s.size)
+                    break outer;
+                if (s.dates[c] != candidate)
+                    inAll = false;
+            }
+
+            if (!inAll)
+                continue;
+
+            for (int i = 0; i < k; i++)
+            {
+                all[i].moveRow(cursor[i], kept);
+                cursor[i]++;
+            }
+            kept++;
+        }
+
+        for (TransactionSeries s : all)
+            s.size = kept;
+        return kept;
+    }
+
+    // The same merge without touching any series: rows[i][k] is the row of dates[i] on the k-th
+    // day that every column has, so many alignments can be read off one set of loaded columns
+    public static int[][] intersectionRows(int[][] dates)
+    {
+        int k = dates.length;
+        int[] cursor = new int[k];
+        int maxDays = Integer.MAX_VALUE;
+        for (int[] column : dates)
+            maxDays = Math.min(maxDays, column.length);
+        int[][] rows = new int[k][k == 0 ? 0 : maxDays];
+        int kept = 0;
+
+        outer:
+        while (k > 0)
+        {
+            int candidate = Integer.MIN_VALUE;
+            for (int i = 0; i < k; i++)
+            {
+                if (cursor[i] >= dates[i].length)
+                    break outer;
+                candidate = Math.max(candidate, dates[i][cursor[i]]);
+            }
+
+            boolean inAll = true;
+            for (int i = 0; i < k; i++)
+            {
+                int c = cursor[i];
+                while (c < dates[i].length && dates[i][c] < candidate)
+                    c++;
+                cursor[i] = c;
+
+                if (c >= dates[i].length)
+                    break outer;
+                if (dates[i][c] != candidate)
+                    inAll = false;
+            }
+
+            if (!inAll)
+                continue;
+
+            for (int i = 0; i < k; i++)
+                rows[i][kept] = cursor[i]++;
+            kept++;
+        }
+
+        for (int i = 0; i < k; i++)
+            rows[i] = Arrays.copyOf(rows[i], kept);
+        return rows;
+    }
+
+    // Every distinct date of any series, ascending
+    static int[] unionCalendar(TransactionSeries[] all)
+    {
+        int k = all.length;
+        int[] cursor = new int[k];
+        int maxSize = 0;
+        for (TransactionSeries s : all)
+            maxSize = Math.max(maxSize, s.size);
+
+        int[] calendar = new int[maxSize];
+        int days = 0;
+
+        while (true)
+        {
+            int next = Integer.MAX_VALUE;
+            for (int i = 0; i < k; i++)
+            {
+                if (cursor[i] < all[i].size)
+                    next = Math.min(next, all[i].dates[cursor[i]]);
+            }
+            if (next == Integer.MAX_VALUE)
+                break;
+
+            for (int i = 0; i < k; i++)
+            {
+                if (cursor[i] < all[i].size && all[i].dates[cursor[i]] == next)
+                    cursor[i]++;
+            }
+
+            if (days == calendar.length)
+                calendar = Arrays.copyOf(calendar, days + (days >> 1) + 1);
+            calendar[days++] = next;
+        }
+
+        return Arrays.copyOf(calendar, days);
+    }
+
+    // Grow a series onto the calendar, filling from the back so no unread row is overwritten
+    static void expand(TransactionSeries s, int[] calendar, boolean forwardFill)
+    {
+        s.ensureCapacity(calendar.length);
+
+        int read = s.size - 1;
+        for (int write = calendar.length - 1; write >= 0; write--)
+        {
+            if (read >= 0 && s.dates[read] == calendar[write])
+            {
+                s.moveRow(read, write);
+                read--;
+            }
+            else if (forwardFill && read >= 0)
+            {
+                // the last known day is still at its old position, read < write
+                s.moveRow(read, write);
+                s.dates[write] = calendar[write];
+            }
+            else
+            {
+                s.dates[write] = calendar[write];
+                s.capital[write] = Double.NaN;
+                s.movingAverage[write] = Double.NaN;
+                s.situation[write] = TransactionSeries.MISSING;
+            }
+        }
+
+        s.size = calendar.length;
+    }
+}//end class
@@ -0,0 +1,228 @@
+/*
+ * SeriesRollup
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Builds weekly and monthly series from the loaded daily series so that
+ * co-movement can be mined at several resolutions from one load. A period
+ * holds the average daily capital of its trading days, so a holiday week
+ * or a short month does not read as a drop, and is dated by its first
+ * calendar day (the Monday of the week, the 1st of the month) so that
+ * every entity lands on the same dates for alignment. A series' first or
+ * last period is dropped when the series starts or ends on a later or
+ * earlier weekday of it, as it only saw part of that period. The moving
+ * average of a coarse series is taken over the remaining periods, with the
+ * first window - 1 periods dropped exactly like the daily load does.
+ *
+ * Every daily series is read once, feeding all requested resolutions in
+ * the same pass, and is left untouched so it can still be mined as is.
+ */
+
+import java.time.LocalDate;
+import java.util.*;
+
+public class SeriesRollup
+{
+    public enum Resolution
+    {
+        DAILY, WEEKLY, MONTHLY;
+
+        public static Resolution fromName(String name)
+        {
+            switch (name.trim().toLowerCase())
+            {
+                case "daily":
+                case "day":
+                    return DAILY;
+                case "weekly":
+                case "week":
+                    return WEEKLY;
+                case "monthly":
+                case "month":
+                    return MONTHLY;
+                default:
+                    throw new IllegalArgumentException("Unknown resolution: " + name);
+            }
+        }
+
+        // Comma separated names, in the order given and without repeats
+        public static List<Resolution> parseList(String names)
+        {
+            LinkedHashSet<Resolution> resolutions = new LinkedHashSet<Resolution>();
+            for (String name : names.split(","))
+            {
+                if (!name.trim().isEmpty())
+                    resolutions.add(fromName(name));
+            }
+            if (resolutions.isEmpty())
+                throw new IllegalArgumentException("No resolutions in \"" + names + "\"");
+            return new ArrayList<Resolution>(resolutions);
+        }
+
+        // Epoch day of the first day of the period holding epochDay
+        public int periodStart(int epochDay)
+        {
+            switch (this)
+            {
+                case WEEKLY:
+                    // 1970-01-01 was a Thursday, so Mondays are 4 days past a multiple of 7
+                    return epochDay - Math.floorMod(epochDay - 4, 7);
+                case MONTHLY:
+                    return (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+                default:
+                    return epochDay;
+            }
+        }
+
+        // Epoch day of the first day of the period after the one starting on periodStart
+        public int nextPeriodStart(int periodStart)
+        {
+            switch (this)
+            {
+                case WEEKLY:
+                    return periodStart + 7;
+                case MONTHLY:
+                    return (int) LocalDate.ofEpochDay(periodStart).plusMonths(1).toEpochDay();
+                default:
+                    return periodStart + 1;
+            }
+        }
+    }
+
+
+    // Roll every series up to each resolution, DAILY maps to the given series themselves
+    public static LinkedHashMap<Resolution, List<TransactionSeries>> rollup(Collection<TransactionSeries> daily,
+            List<Resolution> resolutions, String movingAverageType, int movingAverageWindow)
+    {
+        ArrayList<Resolution> coarse = new ArrayList<Resolution>();
+        for (Resolution resolution : resolutions)
+        {
+            if (resolution != Resolution.DAILY)
+                coarse.add(resolution);
+        }
+
+        ArrayList<List<TransactionSeries>> rolled = new ArrayList<List<TransactionSeries>>();
+        for (int r = 0; r < coarse.size(); r++)
+            rolled.add(new ArrayList<TransactionSeries>(daily.size()));
+
+        Resolution[] targets = coarse.toArray(new Resolution[coarse.size()]);
+        for (TransactionSeries series : daily)
+        {
+            if (series == null)
+                continue;
+            TransactionSeries[] periods = rollup(series, targets, movingAverageType, movingAverageWindow);
+            for (int r = 0; r < targets.length; r++)
+            {
+                if (periods[r] != null)
+                    rolled.get(r).add(periods[r]);
+            }
+        }
+
+        LinkedHashMap<Resolution, List<TransactionSeries>> byResolution = new LinkedHashMap<Resolution, List<TransactionSeries>>();
+        for (Resolution resolution : resolutions)
+        {
+            if (resolution == Resolution.DAILY)
+                byResolution.put(resolution, new ArrayList<TransactionSeries>(daily));
+            else
+                byResolution.put(resolution, rolled.get(coarse.indexOf(resolution)));
+        }
+        return byResolution;
+    }
+
+    // One pass over a daily series; null for a resolution with fewer complete periods than the window
+    public static TransactionSeries[] rollup(TransactionSeries daily, Resolution[] resolutions,
+            String movingAverageType, int movingAverageWindow)
+    {
+        int n = resolutions.length;
+        TransactionSeries[] periods = new TransactionSeries[n];
+        int[][] starts = new int[n][];
+        double[][] averages = new double[n][];
+        int[] count = new int[n];
+        int[] current = new int[n];
+        double[] capital = new double[n];
+        int[] days = new int[n];
+        for (int r = 0; r < n; r++)
+        {
+            starts[r] = new int[daily.size / 4 + 1];
+            averages[r] = new double[starts[r].length];
+            current[r] = Integer.MIN_VALUE;
+        }
+
+        for (int i = 0; i < daily.size; i++)
+        {
+            int date = daily.dates[i];
+            double dayCapital = daily.capital[i];
+            for (int r = 0; r < n; r++)
+            {
+                int start = resolutions[r].periodStart(date);
+                if (start != current[r])
+                {
+                    close(r, current, capital, days, starts, averages, count);
+                    current[r] = start;
+                }
+                if (!Double.isNaN(dayCapital))
+                {
+                    capital[r] += dayCapital;
+                    days[r]++;
+                }
+            }
+        }
+
+        for (int r = 0; r < n; r++)
+        {
+            close(r, current, capital, days, starts, averages, count);
+
+            // the series only saw part of its first or last period
+            int first = 0;
+            int last = count[r];
+            if (last > 0 && hasWeekday(starts[r][0], daily.dates[0]))
+                first++;
+            if (last > first && hasWeekday(daily.dates[daily.size - 1] + 1, resolutions[r].nextPeriodStart(starts[r][last - 1])))
+                last--;
+
+            // same truncation as the daily load: no period before the first full window
+            if (last - first < movingAverageWindow)
+                continue;
+            periods[r] = new TransactionSeries(daily.name, daily.id, last - first);
+            MovingAverage average = MovingAverage.create(movingAverageType, movingAverageWindow);
+            for (int p = first; p < last; p++)
+                periods[r].add(starts[r][p], averages[r][p], average.add(averages[r][p]));
+            periods[r].dropFirst(movingAverageWindow - 1);
+            periods[r].trimToSize();
+        }
+        return periods;
+    }
+
+    // Record the open period of resolution r as its average daily capital, if it had any trading day
+    private static void close(int r, int[] current, double[] capital, int[] days, int[][] starts, double[][] averages,
+                              int[] count)
+    {
+        if (current[r] != Integer.MIN_VALUE && days[r] > 0)
+        {
+            if (count[r] == starts[r].length)
+            {
+                starts[r] = Arrays.copyOf(starts[r], count[r] * 2);
+                averages[r] = Arrays.copyOf(averages[r], count[r] * 2);
+            }
+            starts[r][count[r]] = current[r];
+            averages[r][count[r]] = capital[r] / days[r];
+            count[r]++;
+        }
+        capital[r] = 0.0d;
+        days[r] = 0;
+    }
+
+    // Whether any Monday to Friday falls in [from, to)
+    private static boolean hasWeekday(int from, int to)
+    {
+        for (int day = from; day < to; day++)
+        {
+            // 1970-01-01 was a Thursday, day 3 counting from Monday
+            if (Math.floorMod(day + 3, 7) < 5)
+                return true;
+        }
+        return false;
+    }
+}//end class
@@ -0,0 +1,197 @@
+/*
+ * SituationClassifier
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Classifies a whole series at once: a day is increasing when its capital
+ * is above increaseThreshold times the moving average, decreasing when it
+ * is below decreaseThreshold times it, missing when there is no capital
+ * and stable otherwise. Besides the situation column every series gets
+ * packed bitmasks of its increasing and decreasing days, which
+ * VerticalDatabase turns into tidsets a word at a time.
+ *
+ * The work is done by a Kernel, which only works out the day bitmasks;
+ * the situation bytes are derived from them eight days at a time. The
+ * optional VectorSituationKernel (vector/, built separately because it
+ * needs --add-modules jdk.incubator.vector) compares a full SIMD register
+ * of days per step; the scalar kernel is used when it is not there.
+ */
+
+import java.lang.invoke.*;
+import java.nio.ByteOrder;
+
+public class SituationClassifier
+{
+    public static final double DEFAULT_INCREASE_THRESHOLD = 1.25;
+    public static final double DEFAULT_DECREASE_THRESHOLD = 0.75;
+
+    // Classifies rows [0, size): writes situation and sets the bits of the increasing and decreasing days
+    public interface Kernel
+    {
+        void classify(double[] capital, double[] movingAverage, int size, double increaseThreshold,
+                      double decreaseThreshold, byte[] situation, long[] increasing, long[] decreasing);
+    }
+
+    // SPREAD[b] has byte k set to bit k of b
+    private static final long[] SPREAD = new long[256];
+    private static final long ONES = 0x0101010101010101L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    static
+    {
+        for (int b = 0; b < 256; b++)
+        {
+            for (int k = 0; k < 8; k++)
+                SPREAD[b] |= (long) (b >>> k & 1) << (8 * k);
+        }
+    }
+
+    private final double increaseThreshold;
+    private final double decreaseThreshold;
+    private final Kernel kernel;
+
+
+    public SituationClassifier()
+    {
+        this(DEFAULT_INCREASE_THRESHOLD, DEFAULT_DECREASE_THRESHOLD, "auto");
+    }
+
+    // kernel is auto (vector when available), vector or scalar
+    public SituationClassifier(double increaseThreshold, double decreaseThreshold, String kernel)
+    {
+        if (!(decreaseThreshold <= increaseThreshold))
+            throw new IllegalArgumentException("Decrease threshold " + decreaseThreshold
+                    + " is above increase threshold " + increaseThreshold);
+        this.increaseThreshold = increaseThreshold;
+        this.decreaseThreshold = decreaseThreshold;
+
+        switch (kernel)
+        {
+            case "auto":
+                Kernel vector = vectorKernel();
+                this.kernel = vector != null ? vector : new ScalarKernel();
+                break;
+            case "vector":
+                this.kernel = vectorKernel();
+                if (this.kernel == null)
+                    throw new IllegalArgumentException("Vector API not available, run with --add-modules jdk.incubator.vector");
+                break;
+            case "scalar":
+                this.kernel = new ScalarKernel();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown classifier kernel: " + kernel);
+        }
+    }
+
+    // Loaded by name so the incubator module is only needed when it is there to use
+    private static Kernel vectorKernel()
+    {
+        try
+        {
+            return (Kernel) Class.forName("VectorSituationKernel").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    public String getKernelName()
+    {
+        return kernel instanceof ScalarKernel ? "scalar" : "vector";
+    }
+
+    public double getIncreaseThreshold()
+    {
+        return increaseThreshold;
+    }
+
+    public double getDecreaseThreshold()
+    {
+        return decreaseThreshold;
+    }
+
+    // Classify every row of the series and attach its day bitmasks
+    public void classify(TransactionSeries series)
+    {
+        int words = (series.size + 63) >>> 6;
+        long[] increasing = new long[words];
+        long[] decreasing = new long[words];
+        kernel.classify(series.capital, series.movingAverage, series.size, increaseThreshold, decreaseThreshold,
+                series.situation, increasing, decreasing);
+        series.increasingDays = increasing;
+        series.decreasingDays = decreasing;
+    }
+
+    // Rows [0, size) of plain columns, for callers that keep no series; situation is scratch space
+    public void classify(double[] capital, double[] movingAverage, int size, byte[] situation,
+                         long[] increasing, long[] decreasing)
+    {
+        kernel.classify(capital, movingAverage, size, increaseThreshold, decreaseThreshold, situation, increasing, decreasing);
+    }
+
+    // One row, for the streaming pipeline
+    public byte classify(double capital, double movingAverage)
+    {
+        if (Double.isNaN(capital))
+            return TransactionSeries.MISSING;
+        if (capital > increaseThreshold * movingAverage)
+            return TransactionSeries.INCREASING;
+        if (capital < decreaseThreshold * movingAverage)
+            return TransactionSeries.DECREASING;
+        return TransactionSeries.STABLE;
+    }
+
+    // Situations of days [start, end) from one word of day bits, bit 0 being day start
+    static void situations(long increasing, long decreasing, long missing, byte[] situation, int start, int end)
+    {
+        int day = start;
+        for (int shift = 0; day < end; shift += 8, day += 8)
+        {
+            // a byte is STABLE plus the delta of its one set bit, so the sum never carries between bytes
+            long bytes = TransactionSeries.STABLE * ONES
+                    + (TransactionSeries.INCREASING - TransactionSeries.STABLE) * SPREAD[(int) (increasing >>> shift) & 0xff]
+                    + (TransactionSeries.DECREASING - TransactionSeries.STABLE) * SPREAD[(int) (decreasing >>> shift) & 0xff]
+                    + (TransactionSeries.MISSING - TransactionSeries.STABLE) * SPREAD[(int) (missing >>> shift) & 0xff];
+            if (day + 8 <= end)
+            {
+                LONGS.set(situation, day, bytes);
+            }
+            else
+            {
+                for (int k = 0; day + k < end; k++)
+                    situation[day + k] = (byte) (bytes >>> (8 * k));
+            }
+        }
+    }
+
+    // Plain loop, 64 days per bitmask word
+    static class ScalarKernel implements Kernel
+    {
+        public void classify(double[] capital, double[] movingAverage, int size, double increaseThreshold,
+                             double decreaseThreshold, byte[] situation, long[] increasing, long[] decreasing)
+        {
+            for (int start = 0; start < size; start += 64)
+            {
+                int end = Math.min(start + 64, size);
+                long inc = 0;
+                long dec = 0;
+                long missing = 0;
+                for (int i = start; i < end; i++)
+                {
+                    double c = capital[i];
+                    double m = movingAverage[i];
+                    inc |= (c > increaseThreshold * m ? 1L : 0L) << (i - start);
+                    dec |= (c < decreaseThreshold * m ? 1L : 0L) << (i - start);
+                    missing |= (c != c ? 1L : 0L) << (i - start);
+                }
+                increasing[start >>> 6] = inc;
+                decreasing[start >>> 6] = dec;
+                situations(inc, dec, missing, situation, start, end);
+            }
+        }
+    }
+}//end class
@@ -0,0 +1,215 @@
+/*
+ * StreamingPipeline
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Load, moving average, alignment, classification and itemset creation
+ * in one forward pass over rows ordered by date. Every entity keeps only
+ * its moving average window; when a day is complete it is aligned,
+ * classified and its increasing and decreasing transactions go straight
+ * to a TransactionSink. Peak memory is the window times the number of
+ * entities, whatever the length of the history.
+ *
+ * The transactions are the ones the batch pipeline builds: an entity
+ * takes part in a day once its moving average is ready, exactly like the
+ * batch load dropping the first window - 1 days before alignment.
+ *
+ * The moving averages and last situations can be read and set, so an
+ * incremental run can resume the pass on the days after the last one it
+ * saw. Such a run cannot know which entities will ever fill a window, so
+ * with joinWhenReady an entity only counts towards the intersection once
+ * its average is ready.
+ */
+
+import java.util.*;
+
+public class StreamingPipeline
+{
+    // Told when a day closes, after its transactions went to the sink
+    public interface DayListener
+    {
+        void dayClosed(int date, boolean kept);
+    }
+
+    private final int[] ids;
+    private final MovingAverage[] averages;
+    private final SeriesAligner.Policy policy;
+    private final TransactionSink sink;
+    // same thresholds as setupSituations
+    private final SituationClassifier classifier;
+    private DayListener listener;
+    private boolean joinWhenReady;
+
+    // today's rows, by entity index
+    private final boolean[] present;
+    private final double[] capital;
+    // last emitted situation per entity, for the forward fill policy
+    private final byte[] lastSituation;
+
+    private final int[] increasing;
+    private final int[] decreasing;
+
+    private int currentDate;
+    private boolean dayOpen;
+    private long rows;
+    private int daysSeen;
+    private int daysEmitted;
+    private long transactions;
+
+
+    // ids[i] is the item id of entity index i
+    public StreamingPipeline(int[] ids, String movingAverageType, int movingAverageWindow,
+                             SeriesAligner.Policy policy, SituationClassifier classifier, TransactionSink sink)
+    {
+        int n = ids.length;
+        this.ids = ids;
+        this.policy = policy;
+        this.classifier = classifier;
+        this.sink = sink;
+        averages = new MovingAverage[n];
+        for (int i = 0; i < n; i++)
+            averages[i] = MovingAverage.create(movingAverageType, movingAverageWindow);
+
+        present = new boolean[n];
+        capital = new double[n];
+        lastSituation = new byte[n];
+        Arrays.fill(lastSituation, TransactionSeries.MISSING);
+        increasing = new int[n];
+        decreasing = new int[n];
+    }
+
+    // Rows must arrive ordered by date; an entity with several rows on one day is summed
+    public void add(int entity, int date, double value)
+    {
+        if (dayOpen && date != currentDate)
+        {
+            if (date < currentDate)
+                throw new IllegalArgumentException("Rows out of date order: "
+                        + TransactionSeries.toDateString(date) + " after " + TransactionSeries.toDateString(currentDate));
+            closeDay();
+        }
+
+        currentDate = date;
+        dayOpen = true;
+        if (!present[entity])
+        {
+            present[entity] = true;
+            capital[entity] = 0.0d;
+        }
+        capital[entity] += value;
+        rows++;
+    }
+
+    public void setDayListener(DayListener listener)
+    {
+        this.listener = listener;
+    }
+
+    // Intersection keeps a day when every entity with a ready average has a row, not every entity
+    public void joinWhenReady()
+    {
+        joinWhenReady = true;
+    }
+
+    // The running average of one entity, to save it or to restore it before the first row
+    public MovingAverage getAverage(int entity)
+    {
+        return averages[entity];
+    }
+
+    public byte getLastSituation(int entity)
+    {
+        return lastSituation[entity];
+    }
+
+    public void setLastSituation(int entity, byte situation)
+    {
+        lastSituation[entity] = situation;
+    }
+
+    public void finish()
+    {
+        if (dayOpen)
+            closeDay();
+        dayOpen = false;
+    }
+
+    public long getRows()
+    {
+        return rows;
+    }
+
+    public int getDaysSeen()
+    {
+        return daysSeen;
+    }
+
+    public int getDaysEmitted()
+    {
+        return daysEmitted;
+    }
+
+    public long getTransactions()
+    {
+        return transactions;
+    }
+
+    private void closeDay()
+    {
+        int n = ids.length;
+        int ready = 0;
+        int members = 0;
+        int increasingCount = 0;
+        int decreasingCount = 0;
+
+        for (int i = 0; i < n; i++)
+        {
+            byte situation = TransactionSeries.MISSING;
+            if (present[i])
+            {
+                double movingAverage = averages[i].add(capital[i]);
+                if (movingAverage != MovingAverage.NOT_READY)
+                {
+                    situation = classifier.classify(capital[i], movingAverage);
+                    ready++;
+                }
+                present[i] = false;
+            }
+            if (!joinWhenReady || averages[i].isReady())
+                members++;
+
+            if (situation == TransactionSeries.MISSING && policy == SeriesAligner.Policy.UNION_FILL)
+                situation = lastSituation[i];
+            else
+                lastSituation[i] = situation;
+
+            if (situation == TransactionSeries.INCREASING)
+                increasing[increasingCount++] = ids[i];
+            else if (situation == TransactionSeries.DECREASING)
+                decreasing[decreasingCount++] = ids[i];
+        }
+
+        daysSeen++;
+
+        // intersection keeps the day only if every entity has a ready row, the unions if any has
+        boolean keep = policy == SeriesAligner.Policy.INTERSECTION ? ready == members && ready > 0 : ready > 0;
+        if (keep)
+        {
+            daysEmitted++;
+            if (increasingCount > 0)
+            {
+                sink.accept(increasing, increasingCount);
+                transactions++;
+            }
+            if (decreasingCount > 0)
+            {
+                sink.accept(decreasing, decreasingCount);
+                transactions++;
+            }
+        }
+        if (listener != null)
+            listener.dayClosed(currentDate, keep);
+    }
+}//end class
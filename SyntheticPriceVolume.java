@@ -0,0 +1,133 @@
+/*
+ * SyntheticPriceVolume
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Generates PriceVolume style rows without a database: a random walk
+ * close price per ticker with the given daily volatility, a noisy volume,
+ * and trading days (weekdays) randomly missing at the given rate. The
+ * same seed always gives the same rows, whatever order they are read in.
+ */
+
+import java.util.*;
+
+public class SyntheticPriceVolume
+{
+    public interface RowVisitor
+    {
+        void row(String ticker, int date, double closePrice, double volume);
+    }
+
+    public final int tickers;
+    public final int days;
+    public final double volatility;
+    public final double missingRate;
+    public final long seed;
+    public final int startDate;
+
+    private final String[] names;
+    private final int[] calendar;
+
+
+    // days counts trading days from 2000-01-03, volatility is the daily standard deviation of returns
+    public SyntheticPriceVolume(int tickers, int days, double volatility, double missingRate, long seed)
+    {
+        this.tickers = tickers;
+        this.days = days;
+        this.volatility = volatility;
+        this.missingRate = missingRate;
+        this.seed = seed;
+        this.startDate = TransactionSeries.toEpochDay("2000-01-03");
+
+        names = new String[tickers];
+        for (int i = 0; i < tickers; i++)
+            names[i] = String.format("T%05d", i);
+
+        calendar = new int[days];
+        int date = startDate;
+        for (int i = 0; i < days; i++)
+        {
+            // epoch day 0 was a Thursday, so day % 7 of 2 and 3 is a weekend
+            while (Math.floorMod(date, 7) == 2 || Math.floorMod(date, 7) == 3)
+                date++;
+            calendar[i] = date++;
+        }
+    }
+
+    public String getTicker(int index)
+    {
+        return names[index];
+    }
+
+    public List<String> getTickerNames()
+    {
+        return Arrays.asList(names);
+    }
+
+    // Same industry for every tenth ticker, for the industry analysis
+    public String getIndustry(int index)
+    {
+        return String.format("Industry%02d", index % 10);
+    }
+
+    public String getFirstDate()
+    {
+        return TransactionSeries.toDateString(calendar[0]);
+    }
+
+    public String getLastDate()
+    {
+        return TransactionSeries.toDateString(calendar[days - 1]);
+    }
+
+    // Ticker by ticker, each oldest day first: the order of the bulk load query
+    public void forEachByTicker(RowVisitor visitor)
+    {
+        for (int t = 0; t < tickers; t++)
+        {
+            Walk walk = new Walk(t);
+            for (int d = 0; d < days; d++)
+                walk.step(d, visitor);
+        }
+    }
+
+    // Day by day, all tickers of a day together: the order of the streaming query
+    public void forEachByDate(RowVisitor visitor)
+    {
+        Walk[] walks = new Walk[tickers];
+        for (int t = 0; t < tickers; t++)
+            walks[t] = new Walk(t);
+        for (int d = 0; d < days; d++)
+        {
+            for (Walk walk : walks)
+                walk.step(d, visitor);
+        }
+    }
+
+    // One ticker's random walk, seeded on its own so both orders give the same rows
+    private class Walk
+    {
+        final int ticker;
+        final Random random;
+        double price;
+        final double baseVolume;
+
+        Walk(int ticker)
+        {
+            this.ticker = ticker;
+            random = new Random(seed * 1000003L + ticker);
+            price = 10.0d + random.nextDouble() * 90.0d;
+            baseVolume = 1.0e5d + random.nextDouble() * 1.0e6d;
+        }
+
+        void step(int day, RowVisitor visitor)
+        {
+            price = Math.max(0.01d, price * (1.0d + volatility * random.nextGaussian()));
+            double volume = Math.floor(baseVolume * Math.exp(0.5d * random.nextGaussian()));
+            if (random.nextDouble() >= missingRate)
+                visitor.row(names[ticker], calendar[day], price, volume);
+        }
+    }
+}//end class
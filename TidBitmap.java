@@ -0,0 +1,100 @@
+/*
+ * TidBitmap
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Fixed length bitmap of transaction ids in plain long words. Support of
+ * an itemset is the popcount of the AND of its items' bitmaps, so it is
+ * counted 64 transactions at a time without touching the transactions.
+ */
+
+import java.util.Arrays;
+
+public class TidBitmap
+{
+    public final long[] words;
+    public final int length;
+
+
+    public TidBitmap(int length)
+    {
+        this.length = length;
+        this.words = new long[(length + 63) >>> 6];
+    }
+
+    private TidBitmap(long[] words, int length)
+    {
+        this.words = words;
+        this.length = length;
+    }
+
+    // Adopt the given words, copying only when they are not exactly length bits long
+    public static TidBitmap wrap(long[] words, int length)
+    {
+        int needed = (length + 63) >>> 6;
+        return new TidBitmap(words.length == needed ? words : Arrays.copyOf(words, needed), length);
+    }
+
+    public void set(int tid)
+    {
+        words[tid >>> 6] |= 1L << tid;
+    }
+
+    public boolean get(int tid)
+    {
+        return (words[tid >>> 6] & (1L << tid)) != 0;
+    }
+
+    public int cardinality()
+    {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public TidBitmap and(TidBitmap other)
+    {
+        long[] out = new long[words.length];
+        for (int i = 0; i < out.length; i++)
+            out[i] = words[i] & other.words[i];
+        return new TidBitmap(out, length);
+    }
+
+    // Support of the intersection without building it
+    public int andCardinality(TidBitmap other)
+    {
+        int count = 0;
+        for (int i = 0; i < words.length; i++)
+            count += Long.bitCount(words[i] & other.words[i]);
+        return count;
+    }
+
+    public void or(TidBitmap other)
+    {
+        for (int i = 0; i < words.length; i++)
+            words[i] |= other.words[i];
+    }
+
+    public boolean isSubsetOf(TidBitmap other)
+    {
+        for (int i = 0; i < words.length; i++)
+        {
+            if ((words[i] & ~other.words[i]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean equals(Object o)
+    {
+        return o instanceof TidBitmap && Arrays.equals(words, ((TidBitmap) o).words);
+    }
+
+    public int hashCode()
+    {
+        return Arrays.hashCode(words);
+    }
+}//end class
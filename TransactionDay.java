@@ -1,6 +1,6 @@
 public class TransactionDay
 {
-    public enum Situation { INCREASING, STABLE, DECREASING }
+    public enum Situation { INCREASING, STABLE, DECREASING, MISSING }
 
     public String name;
     public String date;
@@ -0,0 +1,153 @@
+/*
+ * TransactionSeries
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Columnar store for every trading day of one company or industry.
+ * Rows are kept oldest first, dates are held as epoch days and the
+ * situation of each day as the ordinal of TransactionDay.Situation, so a
+ * series costs 21 bytes per row instead of a TransactionDay object.
+ */
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+public class TransactionSeries
+{
+    public static final byte INCREASING = (byte) TransactionDay.Situation.INCREASING.ordinal();
+    public static final byte STABLE = (byte) TransactionDay.Situation.STABLE.ordinal();
+    public static final byte DECREASING = (byte) TransactionDay.Situation.DECREASING.ordinal();
+    public static final byte MISSING = (byte) TransactionDay.Situation.MISSING.ordinal();
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    public String name;
+    public int id;
+    public int size;
+    public int[] dates;
+    public double[] capital;
+    public double[] movingAverage;
+    public byte[] situation;
+    // bit i set when row i is increasing or decreasing, left by SituationClassifier and
+    // dropped when rows change
+    public long[] increasingDays;
+    public long[] decreasingDays;
+
+
+    public TransactionSeries(String name, int id)
+    {
+        this(name, id, DEFAULT_CAPACITY);
+    }
+
+    public TransactionSeries(String name, int id, int capacity)
+    {
+        this.name = name;
+        this.id = id;
+        capacity = Math.max(capacity, 1);
+        dates = new int[capacity];
+        capital = new double[capacity];
+        movingAverage = new double[capacity];
+        situation = new byte[capacity];
+    }
+
+    // Append one day, the caller is responsible for keeping dates ascending
+    public void add(int date, double dayCapital, double dayMovingAverage)
+    {
+        if (size == dates.length)
+            grow(size + 1);
+
+        dates[size] = date;
+        capital[size] = dayCapital;
+        movingAverage[size] = dayMovingAverage;
+        situation[size] = STABLE;
+        size++;
+        increasingDays = decreasingDays = null;
+    }
+
+    // Remove the first n days, used to drop days without a moving average
+    public void dropFirst(int n)
+    {
+        n = Math.min(n, size);
+        if (n <= 0)
+            return;
+
+        int remaining = size - n;
+        System.arraycopy(dates, n, dates, 0, remaining);
+        System.arraycopy(capital, n, capital, 0, remaining);
+        System.arraycopy(movingAverage, n, movingAverage, 0, remaining);
+        System.arraycopy(situation, n, situation, 0, remaining);
+        size = remaining;
+        increasingDays = decreasingDays = null;
+    }
+
+    // Copy row "from" over row "to", used when compacting a series in place
+    public void moveRow(int from, int to)
+    {
+        dates[to] = dates[from];
+        capital[to] = capital[from];
+        movingAverage[to] = movingAverage[from];
+        situation[to] = situation[from];
+        increasingDays = decreasingDays = null;
+    }
+
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > dates.length)
+            grow(capacity);
+    }
+
+    public void trimToSize()
+    {
+        if (size == dates.length)
+            return;
+
+        int capacity = Math.max(size, 1);
+        dates = Arrays.copyOf(dates, capacity);
+        capital = Arrays.copyOf(capital, capacity);
+        movingAverage = Arrays.copyOf(movingAverage, capacity);
+        situation = Arrays.copyOf(situation, capacity);
+    }
+
+    public TransactionDay.Situation getSituation(int row)
+    {
+        return TransactionDay.Situation.values()[situation[row]];
+    }
+
+    // Build a row object, only meant for printing and debugging
+    public TransactionDay getDay(int row)
+    {
+        TransactionDay day = new TransactionDay();
+        day.name = name;
+        day.date = toDateString(dates[row]);
+        day.capital = capital[row];
+        day.movingAverage = movingAverage[row];
+        day.situation = getSituation(row);
+        return day;
+    }
+
+    public static int toEpochDay(java.sql.Date date)
+    {
+        return (int) date.toLocalDate().toEpochDay();
+    }
+
+    public static int toEpochDay(String date)
+    {
+        return (int) LocalDate.parse(date.length() > 10 ? date.substring(0, 10) : date).toEpochDay();
+    }
+
+    public static String toDateString(int epochDay)
+    {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    private void grow(int minCapacity)
+    {
+        int capacity = Math.max(minCapacity, dates.length + (dates.length >> 1));
+        dates = Arrays.copyOf(dates, capacity);
+        capital = Arrays.copyOf(capital, capacity);
+        movingAverage = Arrays.copyOf(movingAverage, capacity);
+        situation = Arrays.copyOf(situation, capacity);
+    }
+}//end class
@@ -0,0 +1,30 @@
+/*
+ * TransactionSink
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Receives transactions one at a time as they are produced, so the
+ * producer never has to hold more than the current day.
+ */
+
+import java.util.*;
+
+public interface TransactionSink
+{
+    // items[0..length) is only valid during the call
+    void accept(int[] items, int length);
+
+
+    // Collects transactions into the List<int[]> the horizontal miners take
+    class Collector implements TransactionSink
+    {
+        public final List<int[]> transactions = new ArrayList<int[]>();
+
+        public void accept(int[] items, int length)
+        {
+            transactions.add(Arrays.copyOf(items, length));
+        }
+    }
+}//end interface
@@ -0,0 +1,189 @@
+/*
+ * VerticalDatabase
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * Transactions stored by item: one TidBitmap per company or industry id
+ * marking the transactions it appears in. Built from the classified
+ * series, the transaction of an increasing day d is tid 2d and that of a
+ * decreasing day is tid 2d + 1, the same transactions createItemSets
+ * builds without ever materializing them.
+ */
+
+import java.util.*;
+
+public class VerticalDatabase
+{
+    public int[] items;
+    public TidBitmap[] tidsets;
+    // non-empty transactions, the base for percentage supports
+    public int transactionCount;
+
+
+    public VerticalDatabase(int[] items, TidBitmap[] tidsets, int transactionCount)
+    {
+        this.items = items;
+        this.tidsets = tidsets;
+        this.transactionCount = transactionCount;
+    }
+
+    public static VerticalDatabase fromTransactions(List<int[]> transactions)
+    {
+        TreeMap<Integer, TidBitmap> byItem = new TreeMap<Integer, TidBitmap>();
+        int tid = 0;
+        int nonEmpty = 0;
+        for (int[] transaction : transactions)
+        {
+            for (int item : transaction)
+            {
+                TidBitmap tids = byItem.get(item);
+                if (tids == null)
+                {
+                    tids = new TidBitmap(transactions.size());
+                    byItem.put(item, tids);
+                }
+                tids.set(tid);
+            }
+            if (transaction.length > 0)
+                nonEmpty++;
+            tid++;
+        }
+        return fromMap(byItem, nonEmpty);
+    }
+
+    // Series must be aligned and classified, days past the shortest series are ignored
+    public static VerticalDatabase fromSeries(Collection<TransactionSeries> allSeries)
+    {
+        int days = Integer.MAX_VALUE;
+        for (TransactionSeries series : allSeries)
+        {
+            if (series.size > 0)
+                days = Math.min(days, series.size);
+        }
+        if (days == Integer.MAX_VALUE)
+            days = 0;
+
+        TreeMap<Integer, TidBitmap> byItem = new TreeMap<Integer, TidBitmap>();
+        TidBitmap any = new TidBitmap(2 * days);
+        for (TransactionSeries series : allSeries)
+        {
+            if (series.size == 0)
+                continue;
+
+            TidBitmap tids;
+            if (series.increasingDays != null)
+            {
+                tids = interleave(series.increasingDays, series.decreasingDays, days);
+            }
+            else
+            {
+                tids = new TidBitmap(2 * days);
+                for (int day = 0; day < days; day++)
+                {
+                    byte situation = series.situation[day];
+                    if (situation == TransactionSeries.INCREASING)
+                        tids.set(2 * day);
+                    else if (situation == TransactionSeries.DECREASING)
+                        tids.set(2 * day + 1);
+                }
+            }
+            byItem.put(series.id, tids);
+            any.or(tids);
+        }
+        return fromMap(byItem, any.cardinality());
+    }
+
+    // Day bitmasks of each id as SituationClassifier builds them, for callers that keep no series
+    public static VerticalDatabase fromMasks(int[] ids, long[][] increasing, long[][] decreasing, int days)
+    {
+        TreeMap<Integer, TidBitmap> byItem = new TreeMap<Integer, TidBitmap>();
+        TidBitmap any = new TidBitmap(2 * days);
+        for (int m = 0; m < ids.length; m++)
+        {
+            TidBitmap tids = interleave(increasing[m], decreasing[m], days);
+            byItem.put(ids[m], tids);
+            any.or(tids);
+        }
+        return fromMap(byItem, any.cardinality());
+    }
+
+    // Tidset from SituationClassifier's day bitmasks: day d's increasing bit becomes tid 2d,
+    // its decreasing bit tid 2d + 1, 32 days per output word
+    static TidBitmap interleave(long[] increasing, long[] decreasing, int days)
+    {
+        long[] words = new long[(2 * days + 63) >>> 6];
+        for (int w = 0; w < words.length; w++)
+        {
+            int shift = (w & 1) << 5;
+            words[w] = spreadBits(increasing[w >>> 1] >>> shift)
+                    | spreadBits(decreasing[w >>> 1] >>> shift) << 1;
+        }
+        // drop days past the shortest series
+        int tail = (2 * days) & 63;
+        if (tail != 0)
+            words[words.length - 1] &= (1L << tail) - 1;
+        return TidBitmap.wrap(words, 2 * days);
+    }
+
+    // Moves the low 32 bits of x to the even bit positions
+    private static long spreadBits(long x)
+    {
+        x &= 0xFFFFFFFFL;
+        x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+        x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+        x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x << 2) & 0x3333333333333333L;
+        x = (x | x << 1) & 0x5555555555555555L;
+        return x;
+    }
+
+    // Builds the bitmaps as transactions stream in, tids are numbered in arrival order
+    public static class Builder implements TransactionSink
+    {
+        private final TreeMap<Integer, long[]> byItem = new TreeMap<Integer, long[]>();
+        private int tid;
+        private int nonEmpty;
+
+        public void accept(int[] items, int length)
+        {
+            int word = tid >>> 6;
+            for (int i = 0; i < length; i++)
+            {
+                long[] words = byItem.get(items[i]);
+                if (words == null || word >= words.length)
+                {
+                    words = words == null ? new long[Math.max(word + 1, 16)] : Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+                    byItem.put(items[i], words);
+                }
+                words[word] |= 1L << tid;
+            }
+            if (length > 0)
+                nonEmpty++;
+            tid++;
+        }
+
+        public VerticalDatabase build()
+        {
+            TreeMap<Integer, TidBitmap> bitmaps = new TreeMap<Integer, TidBitmap>();
+            for (Map.Entry<Integer, long[]> e : byItem.entrySet())
+                bitmaps.put(e.getKey(), TidBitmap.wrap(e.getValue(), tid));
+            return fromMap(bitmaps, nonEmpty);
+        }
+    }
+
+    private static VerticalDatabase fromMap(TreeMap<Integer, TidBitmap> byItem, int transactionCount)
+    {
+        int[] items = new int[byItem.size()];
+        TidBitmap[] tidsets = new TidBitmap[byItem.size()];
+        int i = 0;
+        for (Map.Entry<Integer, TidBitmap> e : byItem.entrySet())
+        {
+            items[i] = e.getKey();
+            tidsets[i] = e.getValue();
+            i++;
+        }
+        return new VerticalDatabase(items, tidsets, transactionCount);
+    }
+}//end class
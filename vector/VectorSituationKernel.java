@@ -0,0 +1,66 @@
+/*
+ * VectorSituationKernel
+ *
+ * Matthew Adler, Isaias Mondar, Ethan Voon
+ *
+ * CSCI 477 Data Mining - Winter 2017
+ *
+ * SituationClassifier kernel on the incubating Vector API. Each step
+ * loads a register of capitals and moving averages, and the two threshold
+ * comparisons come back as lane masks whose bits are exactly the bits of
+ * the increasing and decreasing bitmasks. The situation bytes are then
+ * derived from a whole word of mask bits at once.
+ *
+ * Kept out of the main source tree because the module has to be asked
+ * for. Build it after the rest, into the same class directory:
+ *
+ *   javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorSituationKernel.java
+ *
+ * and run with --add-modules jdk.incubator.vector. SituationClassifier
+ * uses its scalar kernel when this class or the module is missing.
+ */
+
+import jdk.incubator.vector.*;
+
+public class VectorSituationKernel implements SituationClassifier.Kernel
+{
+    // at most 8 lanes, so registers tile a 64 bit word
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+
+    public void classify(double[] capital, double[] movingAverage, int size, double increaseThreshold,
+                         double decreaseThreshold, byte[] situation, long[] increasing, long[] decreasing)
+    {
+        int lanes = SPECIES.length();
+        for (int start = 0; start < size; start += 64)
+        {
+            int end = Math.min(start + 64, size);
+            long inc = 0;
+            long dec = 0;
+            long missing = 0;
+            int i = start;
+            for (; i + lanes <= end; i += lanes)
+            {
+                DoubleVector c = DoubleVector.fromArray(SPECIES, capital, i);
+                DoubleVector m = DoubleVector.fromArray(SPECIES, movingAverage, i);
+                inc |= c.compare(VectorOperators.GT, m.mul(increaseThreshold)).toLong() << (i - start);
+                dec |= c.compare(VectorOperators.LT, m.mul(decreaseThreshold)).toLong() << (i - start);
+                missing |= c.test(VectorOperators.IS_NAN).toLong() << (i - start);
+            }
+
+            // the last partial register
+            for (; i < end; i++)
+            {
+                double c = capital[i];
+                double m = movingAverage[i];
+                inc |= (c > increaseThreshold * m ? 1L : 0L) << (i - start);
+                dec |= (c < decreaseThreshold * m ? 1L : 0L) << (i - start);
+                missing |= (c != c ? 1L : 0L) << (i - start);
+            }
+
+            increasing[start >>> 6] = inc;
+            decreasing[start >>> 6] = dec;
+            SituationClassifier.situations(inc, dec, missing, situation, start, end);
+        }
+    }
+}//end class